@@ -0,0 +1,69 @@
+package gov.bnl.shiftBenchmarks;
+
+import gov.bnl.shift.Shift;
+import gov.bnl.shift.ShiftManager;
+import gov.bnl.shift.Shifts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of concurrent requests: 16 threads calling {@link ShiftManager} at once, as
+ * simultaneous <tt>GET /shift?type=...</tt> and <tt>GET /shift/{id}</tt> requests do.
+ * Every call uses its own EntityManager and a connection of the embedded database's pool;
+ * compare with <tt>-t 1</tt> to see how the throughput scales with the number of threads.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+    @Param("10000")
+    public int shifts;
+
+    @Param("10")
+    public int types;
+
+    @Param("50")
+    public int limit;
+
+    private final ShiftManager shiftManager = ShiftManager.getInstance();
+    private EmbeddedShiftDatabase db;
+
+    @Setup
+    public void setup() {
+        db = EmbeddedShiftDatabase.seed(shifts, types);
+    }
+
+    @Benchmark
+    public Shifts findShiftsByMultiMatch() {
+        final MultivaluedMap<String, String> query = new MultivaluedHashMap<String, String>();
+        query.add("type", db.getTypeName(ThreadLocalRandom.current().nextInt(types) + 1));
+        query.add("limit", Integer.toString(limit));
+        return shiftManager.findShiftsByMultiMatch(query);
+    }
+
+    @Benchmark
+    public Shift findShiftById() {
+        return shiftManager.findShiftById(ThreadLocalRandom.current().nextInt(shifts) + 1);
+    }
+}
@@ -0,0 +1,84 @@
+package gov.bnl.shiftBenchmarks;
+
+import gov.bnl.shift.DbConnection;
+import gov.bnl.shift.EmbeddedDatabase;
+import gov.bnl.shift.OpenShiftIndex;
+import gov.bnl.shift.TypeRegistry;
+
+import java.sql.SQLException;
+
+/**
+ * The service's {@link EmbeddedDatabase}, seeded with a number of synthetic shifts
+ * (see {@link EmbeddedDatabase#seed(int, int)}) and installed as the data source of the service.
+ * The EntityManagerFactory of the service is static, so there is one database per JVM:
+ * run the benchmarks forked (the default) when comparing parameters.
+ *
+ */
+public class EmbeddedShiftDatabase {
+
+    private static EmbeddedShiftDatabase instance = null;
+
+    private final int shifts;
+    private final int types;
+    private final long firstStart;
+
+    private EmbeddedShiftDatabase(final int shifts, final int types, final long firstStart) {
+        this.shifts = shifts;
+        this.types = types;
+        this.firstStart = firstStart;
+    }
+
+    /**
+     * Creates the database with <tt>shifts</tt> shifts of <tt>types</tt> types, unless it
+     * already exists in this JVM, and makes the service use it.
+     *
+     * @param shifts number of shifts
+     * @param types number of types
+     * @return the database
+     */
+    public static synchronized EmbeddedShiftDatabase seed(final int shifts, final int types) {
+        if (instance != null) {
+            if (instance.shifts != shifts || instance.types != types) {
+                throw new IllegalStateException("The database already holds " + instance.shifts
+                        + " shifts of " + instance.types + " types, run the benchmarks forked");
+            }
+            return instance;
+        }
+        if (shifts < types || types < 1) {
+            throw new IllegalArgumentException("Need at least one shift per type");
+        }
+        final EmbeddedDatabase db = EmbeddedDatabase.getInstance();
+        try {
+            instance = new EmbeddedShiftDatabase(shifts, types, db.seed(shifts, types));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create the shift database", e);
+        }
+        DbConnection.setDataSource(db.getDataSource());
+        TypeRegistry.getInstance().refresh();
+        OpenShiftIndex.getInstance().rebuild();
+        return instance;
+    }
+
+    public int getShifts() {
+        return shifts;
+    }
+
+    public int getTypes() {
+        return types;
+    }
+
+    /**
+     * @param type type id, from 1
+     * @return name of the type
+     */
+    public String getTypeName(final int type) {
+        return "type" + type;
+    }
+
+    /**
+     * @return start of the first shift, in ms
+     */
+    public long getFirstStart() {
+        return firstStart;
+    }
+}
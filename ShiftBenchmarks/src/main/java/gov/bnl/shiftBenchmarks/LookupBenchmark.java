@@ -0,0 +1,55 @@
+package gov.bnl.shiftBenchmarks;
+
+import gov.bnl.shift.Shift;
+import gov.bnl.shift.ShiftManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single shift lookups: <tt>GET /shift/{id}</tt> and <tt>GET /shift/open/{type}</tt>.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param("10000")
+    public int shifts;
+
+    @Param("10")
+    public int types;
+
+    private final ShiftManager shiftManager = ShiftManager.getInstance();
+    private EmbeddedShiftDatabase db;
+
+    @Setup
+    public void setup() {
+        db = EmbeddedShiftDatabase.seed(shifts, types);
+    }
+
+    @Benchmark
+    public Shift findShiftById() {
+        return shiftManager.findShiftById(ThreadLocalRandom.current().nextInt(shifts) + 1);
+    }
+
+    @Benchmark
+    public Shift getOpenShift() {
+        return shiftManager.getOpenShift(db.getTypeName(ThreadLocalRandom.current().nextInt(types) + 1));
+    }
+}
@@ -0,0 +1,91 @@
+package gov.bnl.shiftBenchmarks;
+
+import gov.bnl.shift.EmbeddedDatabase;
+import gov.bnl.shift.ShiftManager;
+import gov.bnl.shift.Shifts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ShiftManager#findShiftsByMultiMatch(MultivaluedMap)} with combinations of filters,
+ * as sent by <tt>GET /shift?...</tt>. <tt>filters</tt> is a comma separated list of
+ * type, owner, lead, status, range (one week of start dates) and description;
+ * each call picks one of a set of queries drawn at setup.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiMatchBenchmark {
+
+    @Param("10000")
+    public int shifts;
+
+    @Param("10")
+    public int types;
+
+    @Param({"type", "owner", "lead", "status", "range", "description", "type,status", "type,owner,range"})
+    public String filters;
+
+    @Param("500")
+    public int limit;
+
+    private final ShiftManager shiftManager = ShiftManager.getInstance();
+    private MultivaluedMap<String, String>[] queries;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        final EmbeddedShiftDatabase db = EmbeddedShiftDatabase.seed(shifts, types);
+        final Random random = new Random(42);
+        final long history = System.currentTimeMillis() - db.getFirstStart();
+        queries = new MultivaluedMap[64];
+        for (int i = 0; i < queries.length; i++) {
+            final MultivaluedMap<String, String> query = new MultivaluedHashMap<String, String>();
+            for (String filter : filters.split(",")) {
+                if (filter.equals("type")) {
+                    query.add("type", db.getTypeName(random.nextInt(types) + 1));
+                } else if (filter.equals("owner")) {
+                    query.add("owner", EmbeddedDatabase.SEED_OWNERS.get(random.nextInt(EmbeddedDatabase.SEED_OWNERS.size())));
+                } else if (filter.equals("lead")) {
+                    query.add("leadoperator", "lead" + random.nextInt(50));
+                } else if (filter.equals("status")) {
+                    query.add("status", new String[]{"active", "end", "signed"}[random.nextInt(3)]);
+                } else if (filter.equals("range")) {
+                    final long from = db.getFirstStart() + (long) (random.nextDouble() * history);
+                    query.add("from", Long.toString(from / 1000));
+                    query.add("to", Long.toString(from / 1000 + TimeUnit.DAYS.toSeconds(7)));
+                } else if (filter.equals("description")) {
+                    query.add("description", EmbeddedDatabase.SEED_WORDS.get(random.nextInt(EmbeddedDatabase.SEED_WORDS.size())));
+                } else {
+                    throw new IllegalArgumentException("Unknown filter " + filter);
+                }
+            }
+            query.add("limit", Integer.toString(limit));
+            queries[i] = query;
+        }
+    }
+
+    @Benchmark
+    public Shifts findShiftsByMultiMatch() {
+        return shiftManager.findShiftsByMultiMatch(queries[ThreadLocalRandom.current().nextInt(queries.length)]);
+    }
+}
@@ -0,0 +1,70 @@
+package gov.bnl.shiftBenchmarks;
+
+import gov.bnl.shift.ShiftManager;
+import gov.bnl.shift.Shifts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <tt>GET /shift?at=...</tt> and <tt>GET /shift?overlaps=...</tt> at random times of the history,
+ * for growing histories: the time per call should not grow with <tt>shifts</tt>, as only the shifts
+ * started within the longest shift length before the requested time are scanned.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlapBenchmark {
+
+    @Param({"10000", "100000"})
+    public int shifts;
+
+    @Param("10")
+    public int types;
+
+    private final ShiftManager shiftManager = ShiftManager.getInstance();
+    private EmbeddedShiftDatabase db;
+    private long history;
+
+    @Setup
+    public void setup() {
+        db = EmbeddedShiftDatabase.seed(shifts, types);
+        history = System.currentTimeMillis() - db.getFirstStart();
+    }
+
+    private long randomTime() {
+        return (db.getFirstStart() + (long) (ThreadLocalRandom.current().nextDouble() * history)) / 1000;
+    }
+
+    @Benchmark
+    public Shifts at() {
+        final MultivaluedMap<String, String> query = new MultivaluedHashMap<String, String>();
+        query.add("at", Long.toString(randomTime()));
+        return shiftManager.findShiftsByMultiMatch(query);
+    }
+
+    @Benchmark
+    public Shifts overlaps() {
+        final MultivaluedMap<String, String> query = new MultivaluedHashMap<String, String>();
+        final long from = randomTime();
+        query.add("overlaps", from + "," + (from + TimeUnit.DAYS.toSeconds(1)));
+        return shiftManager.findShiftsByMultiMatch(query);
+    }
+}
@@ -0,0 +1,217 @@
+package gov.bnl.shiftBenchmarks;
+
+import gov.bnl.shift.EmbeddedDatabase;
+import gov.bnl.shift.JPAUtil;
+import gov.bnl.shift.Shift;
+import gov.bnl.shift.ShiftManager;
+import gov.bnl.shift.Shift_;
+import gov.bnl.shift.Shifts;
+import gov.bnl.shift.Type;
+import gov.bnl.shift.TypeRegistry;
+import gov.bnl.shift.Type_;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of building and preparing the query of <tt>GET /shift?...</tt>, not of the database plan:
+ * <tt>criteria</tt> builds the Criteria query per request as
+ * {@link ShiftManager#findShiftsByMultiMatch(MultivaluedMap)} did before it used JPQL templates;
+ * <tt>template</tt> runs the service method. A small <tt>limit</tt> keeps the row fetching out of
+ * the measurement; run with <tt>-prof gc</tt> to compare the allocations.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuildBenchmark {
+
+    @Param("10000")
+    public int shifts;
+
+    @Param("10")
+    public int types;
+
+    @Param({"type", "type,status", "type,owner,range"})
+    public String filters;
+
+    @Param("10")
+    public int limit;
+
+    private final ShiftManager shiftManager = ShiftManager.getInstance();
+    private MultivaluedMap<String, String>[] queries;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        final EmbeddedShiftDatabase db = EmbeddedShiftDatabase.seed(shifts, types);
+        final Random random = new Random(42);
+        final long history = System.currentTimeMillis() - db.getFirstStart();
+        queries = new MultivaluedMap[64];
+        for (int i = 0; i < queries.length; i++) {
+            final MultivaluedMap<String, String> query = new MultivaluedHashMap<String, String>();
+            for (String filter : filters.split(",")) {
+                if (filter.equals("type")) {
+                    query.add("type", db.getTypeName(random.nextInt(types) + 1));
+                } else if (filter.equals("owner")) {
+                    query.add("owner", EmbeddedDatabase.SEED_OWNERS.get(random.nextInt(EmbeddedDatabase.SEED_OWNERS.size())));
+                } else if (filter.equals("status")) {
+                    query.add("status", new String[]{"active", "end", "signed"}[random.nextInt(3)]);
+                } else if (filter.equals("range")) {
+                    final long from = db.getFirstStart() + (long) (random.nextDouble() * history);
+                    query.add("from", Long.toString(from / 1000));
+                    query.add("to", Long.toString(from / 1000 + TimeUnit.DAYS.toSeconds(7)));
+                } else {
+                    throw new IllegalArgumentException("Unknown filter " + filter);
+                }
+            }
+            query.add("limit", Integer.toString(limit));
+            queries[i] = query;
+        }
+    }
+
+    private MultivaluedMap<String, String> next() {
+        return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+    }
+
+    /**
+     * The Criteria construction of {@link ShiftManager#findShiftsByMultiMatch(MultivaluedMap)} before
+     * the JPQL templates, filter by filter: a nested <tt>cb.or(..., disjunction)</tt> per value or list,
+     * folded into a conjunction. Type names are resolved by the {@link TypeRegistry} as in
+     * <tt>template</tt>, not by the type query the service ran then.
+     */
+    @Benchmark
+    public List<Shift> criteria() {
+        final MultivaluedMap<String, String> matches = next();
+        final List<Predicate> andPredicates = new ArrayList<Predicate>();
+        final List<String> shiftOwners = new LinkedList<String>();
+        final List<String> leadOperators = new LinkedList<String>();
+        final List<Integer> typeIds = new LinkedList<Integer>();
+        String status = null;
+        String startDate = null;
+        String endDate = null;
+        String limit = null;
+        for (final Map.Entry<String, List<String>> match : matches.entrySet()) {
+            final String key = match.getKey();
+            if (key.equalsIgnoreCase("from")) {
+                startDate = match.getValue().iterator().next();
+            } else if (key.equalsIgnoreCase("to")) {
+                endDate = match.getValue().iterator().next();
+            } else if (key.equalsIgnoreCase("owner")) {
+                shiftOwners.addAll(match.getValue());
+            } else if (key.equalsIgnoreCase("type")) {
+                typeIds.addAll(TypeRegistry.getInstance().findIdsByName(
+                        match.getValue().toArray(new String[match.getValue().size()])));
+            } else if (key.equalsIgnoreCase("leadoperator")) {
+                leadOperators.addAll(match.getValue());
+            } else if (key.equalsIgnoreCase("limit")) {
+                limit = match.getValue().iterator().next();
+            } else if (key.equalsIgnoreCase("status")) {
+                status = match.getValue().iterator().next();
+            }
+        }
+        final EntityManager em = JPAUtil.createEntityManager();
+        em.getTransaction().begin();
+        try {
+            final CriteriaBuilder cb = em.getCriteriaBuilder();
+            final CriteriaQuery<Shift> cq = cb.createQuery(Shift.class);
+            final Root<Shift> from = cq.from(Shift.class);
+            final Join<Shift, Type> type = from.join(Shift_.type, JoinType.LEFT);
+            if (!shiftOwners.isEmpty()) {
+                Predicate ownerPredicate = cb.disjunction();
+                for (String s : shiftOwners) {
+                    ownerPredicate = cb.or(cb.equal(from.get(Shift_.owner), s), ownerPredicate);
+                }
+                andPredicates.add(ownerPredicate);
+            }
+            if (!typeIds.isEmpty()) {
+                Predicate typePredicate = cb.disjunction();
+                typePredicate = cb.or(type.get(Type_.id).in(typeIds), typePredicate);
+                andPredicates.add(typePredicate);
+            }
+            if (!leadOperators.isEmpty()) {
+                Predicate leadPredicate = cb.disjunction();
+                leadPredicate = cb.or(from.get(Shift_.leadOperator).in(leadOperators), leadPredicate);
+                andPredicates.add(leadPredicate);
+            }
+            if (startDate != null || endDate != null) {
+                final Date start = new Date(startDate != null ? Long.valueOf(startDate) * 1000 : 0);
+                final Date end = endDate != null ? new Date(Long.valueOf(endDate) * 1000) : new Date();
+                andPredicates.add(cb.between(from.get(Shift_.startDate), start, end));
+            }
+            if (status != null) {
+                Predicate statusPredicate = cb.disjunction();
+                Predicate closeUserPredicate = cb.disjunction();
+                if (status.equalsIgnoreCase("active")) {
+                    statusPredicate = cb.or(from.get(Shift_.endDate).isNull(), statusPredicate);
+                } else if (status.equalsIgnoreCase("end")) {
+                    statusPredicate = cb.or(from.get(Shift_.endDate).isNotNull(), statusPredicate);
+                    closeUserPredicate = cb.or(from.get(Shift_.closeShiftUser).isNull(), closeUserPredicate);
+                    andPredicates.add(closeUserPredicate);
+                } else if (status.equalsIgnoreCase("signed")) {
+                    statusPredicate = cb.or(from.get(Shift_.endDate).isNotNull(), statusPredicate);
+                    closeUserPredicate = cb.or(from.get(Shift_.closeShiftUser).isNotNull(), closeUserPredicate);
+                    andPredicates.add(closeUserPredicate);
+                }
+                andPredicates.add(statusPredicate);
+            }
+            Predicate finalPredicate = cb.conjunction();
+            if (!andPredicates.isEmpty()) {
+                Predicate andFinalPredicate = cb.conjunction();
+                for (Predicate predicate : andPredicates) {
+                    andFinalPredicate = cb.and(andFinalPredicate, predicate);
+                }
+                finalPredicate = cb.and(finalPredicate, andFinalPredicate);
+            }
+            cq.where(finalPredicate);
+            cq.groupBy(from);
+            cq.distinct(true);
+            cq.orderBy(cb.desc(from.get(Shift_.startDate)));
+            final TypedQuery<Shift> typedQuery = em.createQuery(cq);
+            typedQuery.setMaxResults(limit != null ? Integer.valueOf(limit) : 500);
+            final List<Shift> result = typedQuery.getResultList();
+            em.getTransaction().commit();
+            return result;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Shifts template() {
+        return shiftManager.findShiftsByMultiMatch(next());
+    }
+}
@@ -0,0 +1,77 @@
+package gov.bnl.shiftBenchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.bnl.shift.ShiftManager;
+import gov.bnl.shift.Shifts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a page of <tt>size</tt> shifts as XML (JAXB) and JSON (Jackson, as the
+ * service's JSON provider does).
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param("10000")
+    public int shifts;
+
+    @Param("10")
+    public int types;
+
+    @Param({"1", "500"})
+    public int size;
+
+    private Shifts page;
+    private Marshaller marshaller;
+    private ObjectMapper mapper;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+
+    @Setup
+    public void setup() throws JAXBException {
+        EmbeddedShiftDatabase.seed(shifts, types);
+        final MultivaluedMap<String, String> query = new MultivaluedHashMap<String, String>();
+        query.add("limit", Integer.toString(size));
+        page = ShiftManager.getInstance().findShiftsByMultiMatch(query);
+        marshaller = JAXBContext.newInstance(Shifts.class).createMarshaller();
+        mapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public int toXml() throws JAXBException {
+        out.reset();
+        marshaller.marshal(page, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int toJson() throws IOException {
+        out.reset();
+        mapper.writeValue(out, page);
+        return out.size();
+    }
+}
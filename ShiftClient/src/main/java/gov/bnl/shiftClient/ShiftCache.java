@@ -0,0 +1,173 @@
+package gov.bnl.shiftClient;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of service responses, enabled with
+ * {@link ShiftClientImpl.ShiftClientBuilder#withCache(int, long)}.
+ * An entry is served without contacting the service for <tt>ttl</tt> milliseconds; after that it
+ * is revalidated with its entity tag, if the service sent one, and refetched otherwise.
+ * Entries hold the received XML objects and every call builds new Shift and Type objects from them;
+ * the types and dates inside a cached shift are shared and must not be modified.
+ *
+ */
+public class ShiftCache {
+
+    private final int maxEntries;
+    private final long ttl;
+    private final Map<String, Entry> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long revalidations = 0;
+    private long invalidations = 0;
+    private long generation = 0;
+
+    ShiftCache(final int maxEntries, final long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > ShiftCache.this.maxEntries;
+            }
+        };
+    }
+
+    static class Entry {
+        private final Object value;
+        private final String tag;
+        private volatile long expires;
+
+        private Entry(final Object value, final String tag, final long expires) {
+            this.value = value;
+            this.tag = tag;
+            this.expires = expires;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        String getTag() {
+            return tag;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expires;
+        }
+    }
+
+    /**
+     * Returns the entry for a key, fresh or not, counting a hit if it is fresh and a miss otherwise.
+     */
+    synchronized Entry get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.isFresh()) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the number of invalidations so far; a result fetched before an invalidation
+     * must not be cached.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a result, unless entries were invalidated since <tt>generation</tt>.
+     */
+    synchronized void put(final String key, final Object value, final String tag, final long generation) {
+        if (generation == this.generation) {
+            entries.put(key, new Entry(value, tag, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Extends an entry the service reported as not modified.
+     */
+    synchronized void revalidated(final Entry entry) {
+        entry.expires = System.currentTimeMillis() + ttl;
+        revalidations++;
+    }
+
+    /**
+     * Removes the entries of the given keys.
+     */
+    synchronized void invalidate(final String... keys) {
+        generation++;
+        for (String key : keys) {
+            if (entries.remove(key) != null) {
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries whose key starts with <tt>prefix</tt>.
+     */
+    synchronized void invalidatePrefix(final String prefix) {
+        generation++;
+        final Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of lookups served from the cache without contacting the service.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of lookups that went to the service, including revalidations.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Number of misses answered by the service with 304 Not Modified.
+     */
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * Number of entries dropped after a start, end or close by this client.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ShiftCache[size=" + entries.size() + ", hits=" + hits + ", misses=" + misses
+                + ", revalidations=" + revalidations + ", invalidations=" + invalidations + "]";
+    }
+}
@@ -4,7 +4,9 @@ import javax.ws.rs.core.MultivaluedMap;
 import java.io.File;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
 *@author: eschuhmacher
@@ -72,10 +74,22 @@ public interface ShiftClient {
      */
     Shift close(final Shift shift) throws ShiftFinderException;
 
+    /**
+     * start, end and close shifts in one request, applied in order and all or nothing.
+     * If a transition fails the service rolls back the batch; the result of the failed
+     * transition tells why, the others report status 424.
+     *
+     * @param transitions the transitions to apply
+     * @return one result per transition
+     * @throws ShiftFinderException if the batch is rejected as a whole
+     */
+    List<ShiftTransitionResult> applyBatch(final List<ShiftTransition> transitions) throws ShiftFinderException;
+
 
     /**
+     * full-text search of the shift descriptions and reports, most relevant shifts first
      *
-     * @param pattern
+     * @param pattern search words
      * @return collection of Shift objects
      * @throws ShiftFinderException
      */
@@ -100,4 +114,16 @@ public interface ShiftClient {
      * @throws ShiftFinderException
      */
     Collection<Shift> findShifts(final MultivaluedMap<String, String> map) throws ShiftFinderException;
+
+    /**
+     * Lazily scans the shifts matching the criteria in the map, newest first, without the
+     * result size limit of {@link #findShifts(MultivaluedMap)}. Shifts are fetched page by page
+     * (<tt>limit</tt> shifts per page, 500 by default), the next page being fetched in the
+     * background while the current one is consumed. Close the stream to stop the prefetch early.
+     *
+     * @param map Multivalue map for searching a key with multiple values
+     * @return stream of shift objects
+     * @throws ShiftFinderException
+     */
+    Stream<Shift> streamShifts(final MultivaluedMap<String, String> map) throws ShiftFinderException;
 }
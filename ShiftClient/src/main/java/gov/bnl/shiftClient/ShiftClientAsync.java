@@ -0,0 +1,103 @@
+package gov.bnl.shiftClient;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link ShiftClient}: every call is run on the client's executor and
+ * returns at once. Failures complete the future exceptionally with a {@link ShiftFinderException}.
+ *
+ */
+public interface ShiftClientAsync {
+
+    /**
+     * Get a list of all the shifts currently existings
+     *
+     * @return future collection of shifts
+     */
+    CompletableFuture<Collection<Shift>> listShifts();
+
+    /**
+     * Get the last open shift of a type
+     *
+     * @param type type name
+     * @return future shift
+     */
+    CompletableFuture<Shift> getLastOpenShift(final String type);
+
+    /**
+     * Get a list of all the types currently existings
+     *
+     * @return future collection of types
+     */
+    CompletableFuture<Collection<Type>> listTypes();
+
+    /**
+     * Returns a shift that exactly matches the shiftId <tt>shiftId</tt>
+     *
+     * @param shiftId shiftId
+     * @param type type name
+     * @return future shift
+     */
+    CompletableFuture<Shift> getShift(final Integer shiftId, final String type);
+
+    /**
+     * start a single shift <tt>shift</tt>,
+     *
+     * @param shift the shift to be started
+     * @return future started shift
+     */
+    CompletableFuture<Shift> start(final Shift shift);
+
+    /**
+     * end a shift
+     *
+     * @param shift to be ended
+     * @return future ended shift
+     */
+    CompletableFuture<Shift> end(final Shift shift);
+
+    /**
+     * close a shift
+     *
+     * @param shift shift to be closed
+     * @return future closed shift
+     */
+    CompletableFuture<Shift> close(final Shift shift);
+
+    /**
+     * start, end and close shifts in one request, applied in order and all or nothing
+     *
+     * @param transitions the transitions to apply
+     * @return future results, one per transition
+     */
+    CompletableFuture<List<ShiftTransitionResult>> applyBatch(final List<ShiftTransition> transitions);
+
+    /**
+     * full-text search of the shift descriptions and reports, most relevant shifts first
+     *
+     * @param pattern search words
+     * @return future collection of Shift objects
+     */
+    CompletableFuture<Collection<Shift>> findShiftsBySearch(final String pattern);
+
+    /**
+     * Query for shifts based on the criteria specified in the map
+     *
+     * @param map
+     * @return future collection of Shift objects
+     */
+    CompletableFuture<Collection<Shift>> findShifts(final Map<String, String> map);
+
+    /**
+     * Multivalued map used to search for a key with multiple values. e.g.
+     * shift a=1 or shift a=2
+     *
+     * @param map Multivalue map for searching a key with multiple values
+     * @return future collection of shift objects
+     */
+    CompletableFuture<Collection<Shift>> findShifts(final MultivaluedMap<String, String> map);
+}
@@ -1,8 +1,11 @@
 package gov.bnl.shiftClient;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -10,12 +13,24 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
@@ -43,6 +58,12 @@ import javax.ws.rs.core.UriBuilder;
 public class ShiftClientImpl implements ShiftClient {
     private final WebResource service;
     private final ExecutorService executor;
+    private final ShiftCache cache;
+    private final ShiftClientAsync async = new Async();
+
+    private static final String DEFAULT_PAGE_SIZE = "500";
+    private static final Pattern nextLink = Pattern.compile("<([^>]*)>\\s*;\\s*rel=\"?next\"?");
+    private static final Pattern afterParam = Pattern.compile("[?&]after=([^&]*)");
 
     public static class ShiftClientBuilder {
         // required
@@ -60,10 +81,16 @@ public class ShiftClientImpl implements ShiftClient {
         private String username = null;
         private String password = null;
 
-        private ExecutorService executor = Executors.newSingleThreadExecutor();
+        private ExecutorService executor = null;
+        private int threads = DEFAULT_THREADS;
+
+        private int cacheEntries = 0;
+        private long cacheTtl = 0;
 
         private ShiftProperties properties = new ShiftProperties();
 
+        private static final int DEFAULT_THREADS = 4;
+
         private static final String DEFAULT_OLOG_URL = "http://localhost:8080/Shift/resources"; //$NON-NLS-1$8
 
         private ShiftClientBuilder() {
@@ -173,7 +200,7 @@ public class ShiftClientImpl implements ShiftClient {
 
         /**
          * Provide your own executor on which the queries are to be made. <br>
-         * By default a single threaded executor is used.
+         * By default a pool of {@link #withThreads(int)} daemon threads is used.
          *
          * @param executor
          * @return {@link ShiftClientBuilder}
@@ -183,7 +210,58 @@ public class ShiftClientImpl implements ShiftClient {
             return this;
         }
 
+        /**
+         * Set the number of threads of the default executor, that is the number of
+         * concurrent requests to the service. 4 by default.
+         *
+         * @param threads
+         * @return {@link ShiftClientBuilder}
+         */
+        public ShiftClientBuilder withThreads(final int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Enable caching of {@link ShiftClient#listTypes()}, {@link ShiftClient#getShift(Integer, String)}
+         * and {@link ShiftClient#getLastOpenShift(String)} results.
+         * A result is reused for <tt>ttlMillis</tt>, then revalidated with the service.
+         * Results are dropped when this client starts, ends or closes a shift; changes made by
+         * other clients are seen once the entry is revalidated. Disabled by default.
+         *
+         * @param maxEntries maximum number of cached results
+         * @param ttlMillis time a result is reused without asking the service
+         * @return {@link ShiftClientBuilder}
+         */
+        public ShiftClientBuilder withCache(final int maxEntries, final long ttlMillis) {
+            this.cacheEntries = maxEntries;
+            this.cacheTtl = ttlMillis;
+            return this;
+        }
+
+        /**
+         * Creates the client and returns its non-blocking view.
+         *
+         * @return {@link ShiftClientAsync}
+         * @throws Exception
+         */
+        public ShiftClientAsync createAsync() throws Exception {
+            return create().async();
+        }
+
         public ShiftClientImpl create() throws Exception {
+            if (this.executor == null) {
+                this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "shift-client-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
             if (this.protocol.equalsIgnoreCase("http")) { //$NON-NLS-1$
                 this.clientConfig = new DefaultClientConfig();
             } else if (this.protocol.equalsIgnoreCase("https")) { //$NON-NLS-1$
@@ -215,7 +293,7 @@ public class ShiftClientImpl implements ShiftClient {
                     "password", "password");
             return new ShiftClientImpl(this.shiftURI, this.clientConfig,
                     this.withHTTPAuthentication, this.username, this.password,
-                    this.executor);
+                    this.executor, this.cacheEntries > 0 ? new ShiftCache(this.cacheEntries, this.cacheTtl) : null);
         }
 
         private String ifNullReturnPreferenceValue(final String value,final String key, final String Default) {
@@ -228,8 +306,10 @@ public class ShiftClientImpl implements ShiftClient {
 
     }
     private ShiftClientImpl(final URI shiftURI, ClientConfig config, final boolean withHTTPBasicAuthFilter,
-                            final String username, final String password, final ExecutorService executor) {
+                            final String username, final String password, final ExecutorService executor,
+                            final ShiftCache cache) {
         this.executor = executor;
+        this.cache = cache;
         config.getClasses().add(MultiPartWriter.class);
         final Client client = Client.create(config);
         if (withHTTPBasicAuthFilter) {
@@ -239,181 +319,472 @@ public class ShiftClientImpl implements ShiftClient {
         service = client.resource(UriBuilder.fromUri(shiftURI).build());
     }
 
+    /**
+     * Returns the cache of this client, with its statistics.
+     *
+     * @return {@link ShiftCache}, or null if caching is not enabled
+     */
+    public ShiftCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the non-blocking view of this client.
+     *
+     * @return {@link ShiftClientAsync} sharing this client's connection and executor
+     */
+    public ShiftClientAsync async() {
+        return async;
+    }
+
     @Override
     public Shift getLastOpenShift(final String type) throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Shift>() {
-
-            @Override
-            public Shift call() throws Exception {
-                final XmlShift xmlShift = service.path("shift").path(type)
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON).get(XmlShift.class);
-                return new Shift(xmlShift);
-            }
-        });
+        return await(async.getLastOpenShift(type));
     }
 
     @Override
     public Collection<Shift> listShifts() throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Collection<Shift>>() {
-
-            @Override
-            public Collection<Shift> call() throws Exception {
-                final Collection<Shift> shifts = new LinkedHashSet<Shift>();
-                final XmlShifts xmlShifts = service.path("shift")
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON).get(XmlShifts.class);
-                for (XmlShift xmlShift : xmlShifts.getShifts()) {
-                    shifts.add(new Shift(xmlShift));
-                }
-                return shifts;
-            }
-        });
+        return await(async.listShifts());
     }
 
-
     @Override
     public Collection<Type> listTypes() throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Collection<Type>>() {
-
-            @Override
-            public Collection<Type> call() throws Exception {
-                final Collection<Type> types = new HashSet<Type>();
-                final XmlTypes xmlTypes = service.path("shift").path("type")
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON).get(XmlTypes.class);
-                for (XmlType xmlType : xmlTypes.getTypes()) {
-                    types.add(new Type(xmlType));
-                }
-                return types;
-            }
-        });
+        return await(async.listTypes());
     }
 
     @Override
     public Shift getShift(final Integer shiftId, final String type) throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Shift>() {
-
-            @Override
-            public Shift call() throws Exception {
-                final XmlShift xmlShift = service.path("shift").path(type).path(shiftId.toString())
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON).get(XmlShift.class);
-                return new Shift(xmlShift);
-            }
-
-        });    }
+        return await(async.getShift(shiftId, type));
+    }
 
     @Override
     public Shift start(final Shift shift) throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Shift>() {
-            @Override
-            public Shift call() throws Exception {
-                final XmlShift xmlShift = shift.toXml();
-                final ClientResponse clientResponse = service.path("shift").path("start")
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON)
-                        .put(ClientResponse.class, xmlShift);
-                if (clientResponse.getStatus() < 300)
-                    return new Shift(clientResponse.getEntity(XmlShift.class));
-                else
-                    throw new UniformInterfaceException(clientResponse);
-            }
-        });
+        return await(async.start(shift));
     }
 
     @Override
     public Shift end(final Shift shift) throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Shift>() {
-            @Override
-            public Shift call() throws Exception {
-                final XmlShift xmlShift = shift.toXml();
-                final ClientResponse clientResponse = service.path("shift").path("end")
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON)
-                        .put(ClientResponse.class, xmlShift);
-                if (clientResponse.getStatus() < 300)
-                    return new Shift(clientResponse.getEntity(XmlShift.class));
-                else
-                    throw new UniformInterfaceException(clientResponse);
-            }
-        });    }
+        return await(async.end(shift));
+    }
 
     @Override
     public Shift close(final Shift shift) throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Shift>() {
-            @Override
-            public Shift call() throws Exception {
-                final XmlShift xmlShift = shift.toXml();
-                final ClientResponse clientResponse = service.path("shift").path("close")
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON)
-                        .put(ClientResponse.class, xmlShift);
-                if (clientResponse.getStatus() < 300)
-                    return new Shift(clientResponse.getEntity(XmlShift.class));
-                else
-                    throw new UniformInterfaceException(clientResponse);
-            }
-        });    }
+        return await(async.close(shift));
+    }
+
+    @Override
+    public List<ShiftTransitionResult> applyBatch(final List<ShiftTransition> transitions)
+            throws ShiftFinderException {
+        return await(async.applyBatch(transitions));
+    }
 
     @Override
     public Collection<Shift> findShiftsBySearch(String pattern) throws ShiftFinderException {
-        //TODO: find if needed to be implemented
-        return null;
+        return await(async.findShiftsBySearch(pattern));
     }
 
     @Override
     public Collection<Shift> findShifts(final Map<String, String> map) throws ShiftFinderException {
-        final MultivaluedMap<String, String> mMap = new MultivaluedMapImpl();
-        final Iterator<Map.Entry<String, String>> itr = map.entrySet().iterator();
-        while (itr.hasNext()) {
-            Map.Entry<String, String> entry = itr.next();
-            mMap.put(entry.getKey(),
-                    Arrays.asList(entry.getValue().split(",")));
-        }
-        return wrappedSubmit(new Callable<Collection<Shift>>() {
+        return await(async.findShifts(map));
+    }
+
+    @Override
+    public Collection<Shift> findShifts(final MultivaluedMap<String, String> map) throws ShiftFinderException {
+        return await(async.findShifts(map));
+    }
+
+    @Override
+    public Stream<Shift> streamShifts(final MultivaluedMap<String, String> map) throws ShiftFinderException {
+        final ShiftPages pages = new ShiftPages(map);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(pages::close);
+    }
+
+    /**
+     * One page of a scan: its shifts and the cursor of the next page, null on the last page.
+     */
+    private static class Page {
+        private final List<Shift> shifts;
+        private final String after;
+
+        private Page(final List<Shift> shifts, final String after) {
+            this.shifts = shifts;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Iterator over the shifts of a query, following the <tt>Link: rel="next"</tt> cursor of the
+     * service and fetching the next page while the current one is consumed.
+     */
+    private class ShiftPages implements Iterator<Shift> {
+        private final MultivaluedMap<String, String> query = new MultivaluedMapImpl();
+        private Iterator<Shift> current = Collections.<Shift>emptyList().iterator();
+        private CompletableFuture<Page> next;
+
+        private ShiftPages(final MultivaluedMap<String, String> map) {
+            boolean limit = false;
+            for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+                if (!entry.getKey().equalsIgnoreCase("page") && !entry.getKey().equalsIgnoreCase("after")) {
+                    query.put(entry.getKey(), entry.getValue());
+                    limit |= entry.getKey().equalsIgnoreCase("limit");
+                }
+            }
+            if (!limit) {
+                query.putSingle("limit", DEFAULT_PAGE_SIZE);
+            }
+            next = fetchPage(null);
+        }
+
         @Override
-        public Collection<Shift> call() throws Exception {
-            final Collection<Shift> shifts = new LinkedHashSet<Shift>();
-            final XmlShifts xmlShifts = service.path("shift").queryParams(mMap)
-                .accept(MediaType.APPLICATION_XML)
-                .accept(MediaType.APPLICATION_JSON).get(XmlShifts.class);
-        for (XmlShift xmlShift : xmlShifts.getShifts()) {
-            shifts.add(new Shift(xmlShift));
+        public boolean hasNext() {
+            while (!current.hasNext() && next != null) {
+                final Page page = await(next);
+                next = page.after != null ? fetchPage(page.after) : null;
+                current = page.shifts.iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public Shift next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
         }
-        return  Collections.unmodifiableCollection(shifts);
+
+        private void close() {
+            if (next != null) {
+                next.cancel(false);
+                next = null;
+            }
+        }
+
+        private CompletableFuture<Page> fetchPage(final String after) {
+            return submit(new Callable<Page>() {
+                @Override
+                public Page call() throws Exception {
+                    WebResource resource = service.path("shift").queryParams(query);
+                    if (after != null) {
+                        resource = resource.queryParam("after", after);
+                    }
+                    final ClientResponse clientResponse = resource
+                            .accept(MediaType.APPLICATION_XML)
+                            .accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+                    if (clientResponse.getStatus() >= 300) {
+                        throw new UniformInterfaceException(clientResponse);
+                    }
+                    final List<Shift> shifts = new ArrayList<Shift>();
+                    for (XmlShift xmlShift : clientResponse.getEntity(XmlShifts.class).getShifts()) {
+                        shifts.add(new Shift(xmlShift));
+                    }
+                    return new Page(shifts, nextCursor(clientResponse.getHeaders().get("Link")));
+                }
+            });
         }
-        });
     }
 
-    @Override
-    public Collection<Shift> findShifts(final MultivaluedMap<String, String> map) throws ShiftFinderException {
-        return wrappedSubmit(new Callable<Collection<Shift>>() {
+    /**
+     * Returns the <tt>after</tt> cursor of the <tt>rel="next"</tt> link, or null if there is none.
+     */
+    static String nextCursor(final List<String> links) {
+        if (links == null) {
+            return null;
+        }
+        for (String link : links) {
+            final Matcher m = nextLink.matcher(link);
+            while (m.find()) {
+                final Matcher after = afterParam.matcher(m.group(1));
+                if (after.find()) {
+                    try {
+                        return URLDecoder.decode(after.group(1), "UTF-8");
+                    } catch (UnsupportedEncodingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Non-blocking view of this client, sharing its connection and executor.
+     */
+    private class Async implements ShiftClientAsync {
+
+        @Override
+        public CompletableFuture<Shift> getLastOpenShift(final String type) {
+            return submit(new Callable<Shift>() {
+
+                @Override
+                public Shift call() throws Exception {
+                    final XmlShift xmlShift = cachedGet("open/" + type, service.path("shift").path(type),
+                            XmlShift.class);
+                    return new Shift(xmlShift);
+                }
+            });
+        }
+
+        @Override
+        public CompletableFuture<Collection<Shift>> listShifts() {
+            return submit(new Callable<Collection<Shift>>() {
+
+                @Override
+                public Collection<Shift> call() throws Exception {
+                    final Collection<Shift> shifts = new LinkedHashSet<Shift>();
+                    final XmlShifts xmlShifts = service.path("shift")
+                            .accept(MediaType.APPLICATION_XML)
+                            .accept(MediaType.APPLICATION_JSON).get(XmlShifts.class);
+                    for (XmlShift xmlShift : xmlShifts.getShifts()) {
+                        shifts.add(new Shift(xmlShift));
+                    }
+                    return shifts;
+                }
+            });
+        }
+
+
+        @Override
+        public CompletableFuture<Collection<Type>> listTypes() {
+            return submit(new Callable<Collection<Type>>() {
+
+                @Override
+                public Collection<Type> call() throws Exception {
+                    final Collection<Type> types = new HashSet<Type>();
+                    final XmlTypes xmlTypes = cachedGet("types", service.path("shift").path("type"),
+                            XmlTypes.class);
+                    for (XmlType xmlType : xmlTypes.getTypes()) {
+                        types.add(new Type(xmlType));
+                    }
+                    return types;
+                }
+            });
+        }
+
+        @Override
+        public CompletableFuture<Shift> getShift(final Integer shiftId, final String type) {
+            return submit(new Callable<Shift>() {
+
+                @Override
+                public Shift call() throws Exception {
+                    final XmlShift xmlShift = cachedGet("shift/" + shiftId,
+                            service.path("shift").path(type).path(shiftId.toString()), XmlShift.class);
+                    return new Shift(xmlShift);
+                }
+
+            });    }
+
+        @Override
+        public CompletableFuture<Shift> start(final Shift shift) {
+            return submit(new Callable<Shift>() {
+                @Override
+                public Shift call() throws Exception {
+                    final XmlShift xmlShift = shift.toXml();
+                    final ClientResponse clientResponse = service.path("shift").path("start")
+                            .accept(MediaType.APPLICATION_XML)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .put(ClientResponse.class, xmlShift);
+                    invalidate(shift);
+                    if (clientResponse.getStatus() < 300)
+                        return new Shift(clientResponse.getEntity(XmlShift.class));
+                    else
+                        throw new UniformInterfaceException(clientResponse);
+                }
+            });
+        }
+
+        @Override
+        public CompletableFuture<Shift> end(final Shift shift) {
+            return submit(new Callable<Shift>() {
+                @Override
+                public Shift call() throws Exception {
+                    final XmlShift xmlShift = shift.toXml();
+                    final ClientResponse clientResponse = service.path("shift").path("end")
+                            .accept(MediaType.APPLICATION_XML)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .put(ClientResponse.class, xmlShift);
+                    invalidate(shift);
+                    if (clientResponse.getStatus() < 300)
+                        return new Shift(clientResponse.getEntity(XmlShift.class));
+                    else
+                        throw new UniformInterfaceException(clientResponse);
+                }
+            });    }
+
+        @Override
+        public CompletableFuture<Shift> close(final Shift shift) {
+            return submit(new Callable<Shift>() {
+                @Override
+                public Shift call() throws Exception {
+                    final XmlShift xmlShift = shift.toXml();
+                    final ClientResponse clientResponse = service.path("shift").path("close")
+                            .accept(MediaType.APPLICATION_XML)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .put(ClientResponse.class, xmlShift);
+                    invalidate(shift);
+                    if (clientResponse.getStatus() < 300)
+                        return new Shift(clientResponse.getEntity(XmlShift.class));
+                    else
+                        throw new UniformInterfaceException(clientResponse);
+                }
+            });    }
+
+        @Override
+        public CompletableFuture<List<ShiftTransitionResult>> applyBatch(final List<ShiftTransition> transitions) {
+            return submit(new Callable<List<ShiftTransitionResult>>() {
+                @Override
+                public List<ShiftTransitionResult> call() throws Exception {
+                    final XmlShiftTransitions xmlTransitions = new XmlShiftTransitions();
+                    for (ShiftTransition transition : transitions) {
+                        xmlTransitions.add(transition.toXml());
+                    }
+                    final ClientResponse clientResponse = service.path("shift").path("batch")
+                            .accept(MediaType.APPLICATION_XML)
+                            .type(MediaType.APPLICATION_XML)
+                            .put(ClientResponse.class, xmlTransitions);
+                    for (ShiftTransition transition : transitions) {
+                        invalidate(transition.getShift());
+                    }
+                    // a rolled back batch comes as 409 with the results as body
+                    if (clientResponse.getStatus() < 300
+                            || clientResponse.getStatus() == 409) {
+                        final List<ShiftTransitionResult> results = new ArrayList<ShiftTransitionResult>();
+                        for (XmlShiftTransitionResult result
+                                : clientResponse.getEntity(XmlShiftTransitionResults.class)) {
+                            results.add(new ShiftTransitionResult(result));
+                        }
+                        return results;
+                    } else {
+                        throw new UniformInterfaceException(clientResponse);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public CompletableFuture<Collection<Shift>> findShiftsBySearch(String pattern) {
+            final MultivaluedMap<String, String> mMap = new MultivaluedMapImpl();
+            mMap.add("q", pattern);
+            return findShifts(mMap);
+        }
+
+        @Override
+        public CompletableFuture<Collection<Shift>> findShifts(final Map<String, String> map) {
+            final MultivaluedMap<String, String> mMap = new MultivaluedMapImpl();
+            final Iterator<Map.Entry<String, String>> itr = map.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<String, String> entry = itr.next();
+                mMap.put(entry.getKey(),
+                        Arrays.asList(entry.getValue().split(",")));
+            }
+            return submit(new Callable<Collection<Shift>>() {
             @Override
             public Collection<Shift> call() throws Exception {
                 final Collection<Shift> shifts = new LinkedHashSet<Shift>();
-                final XmlShifts xmlShifts = service.path("shift").queryParams(map)
-                        .accept(MediaType.APPLICATION_XML)
-                        .accept(MediaType.APPLICATION_JSON).get(XmlShifts.class);
-                for (XmlShift xmlShift : xmlShifts.getShifts()) {
-                    shifts.add(new Shift(xmlShift));
+                final XmlShifts xmlShifts = service.path("shift").queryParams(mMap)
+                    .accept(MediaType.APPLICATION_XML)
+                    .accept(MediaType.APPLICATION_JSON).get(XmlShifts.class);
+            for (XmlShift xmlShift : xmlShifts.getShifts()) {
+                shifts.add(new Shift(xmlShift));
+            }
+            return  Collections.unmodifiableCollection(shifts);
+            }
+            });
+        }
+
+        @Override
+        public CompletableFuture<Collection<Shift>> findShifts(final MultivaluedMap<String, String> map) {
+            return submit(new Callable<Collection<Shift>>() {
+                @Override
+                public Collection<Shift> call() throws Exception {
+                    final Collection<Shift> shifts = new LinkedHashSet<Shift>();
+                    final XmlShifts xmlShifts = service.path("shift").queryParams(map)
+                            .accept(MediaType.APPLICATION_XML)
+                            .accept(MediaType.APPLICATION_JSON).get(XmlShifts.class);
+                    for (XmlShift xmlShift : xmlShifts.getShifts()) {
+                        shifts.add(new Shift(xmlShift));
+                    }
+                    return  Collections.unmodifiableCollection(shifts);
                 }
-                return  Collections.unmodifiableCollection(shifts);
+            });    }
+    }
+
+    /**
+     * GETs an entity through the cache, if enabled: a fresh entry is returned as is, a stale one
+     * is revalidated with <tt>If-None-Match</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T cachedGet(final String key, final WebResource resource, final Class<T> entityClass) {
+        if (cache == null) {
+            return resource.accept(MediaType.APPLICATION_XML)
+                    .accept(MediaType.APPLICATION_JSON).get(entityClass);
+        }
+        final long generation = cache.getGeneration();
+        final ShiftCache.Entry cached = cache.get(key);
+        if (cached != null && cached.isFresh()) {
+            return (T) cached.getValue();
+        }
+        WebResource.Builder request = resource.accept(MediaType.APPLICATION_XML)
+                .accept(MediaType.APPLICATION_JSON);
+        if (cached != null && cached.getTag() != null) {
+            request = request.header("If-None-Match", cached.getTag());
+        }
+        final ClientResponse clientResponse = request.get(ClientResponse.class);
+        if (cached != null && clientResponse.getStatus() == 304) {
+            clientResponse.close();
+            cache.revalidated(cached);
+            return (T) cached.getValue();
+        }
+        if (clientResponse.getStatus() >= 300) {
+            throw new UniformInterfaceException(clientResponse);
+        }
+        final T entity = clientResponse.getEntity(entityClass);
+        cache.put(key, entity, clientResponse.getHeaders().getFirst("ETag"), generation);
+        return entity;
+    }
+
+    /**
+     * Drops the cached results a start, end or close of <tt>shift</tt> may have changed.
+     */
+    private void invalidate(final Shift shift) {
+        if (cache != null) {
+            cache.invalidatePrefix("open/");
+            if (shift.getId() != null) {
+                cache.invalidate("shift/" + shift.getId());
+            }
+        }
+    }
+
+    /**
+     * Runs a call on the executor. Errors reported by the service complete the future
+     * with a {@link ShiftFinderException}.
+     */
+    private <T> CompletableFuture<T> submit(final Callable<T> callable) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (UniformInterfaceException e) {
+                throw new ShiftFinderException(e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-        });    }
+        }, executor);
+    }
 
-    private <T> T wrappedSubmit(final Callable<T> callable) {
+    private static <T> T await(final CompletableFuture<T> future) {
         try {
-            return this.executor.submit(callable).get();
+            return future.get();
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         } catch (ExecutionException e) {
-            if (e.getCause() != null
-                    && e.getCause() instanceof UniformInterfaceException) {
-                throw new ShiftFinderException(
-                        (UniformInterfaceException) e.getCause());
+            if (e.getCause() instanceof ShiftFinderException) {
+                throw (ShiftFinderException) e.getCause();
             }
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
         }
     }
 }
@@ -0,0 +1,44 @@
+package gov.bnl.shiftClient;
+
+/**
+ * One start, end or close of a batch sent with {@link ShiftClient#applyBatch(java.util.List)}.
+ *
+ */
+public class ShiftTransition {
+
+    public static final String START = "start";
+    public static final String END = "end";
+    public static final String CLOSE = "close";
+
+    private final String action;
+    private final Shift shift;
+
+    public ShiftTransition(final String action, final Shift shift) {
+        this.action = action;
+        this.shift = shift;
+    }
+
+    public static ShiftTransition start(final Shift shift) {
+        return new ShiftTransition(START, shift);
+    }
+
+    public static ShiftTransition end(final Shift shift) {
+        return new ShiftTransition(END, shift);
+    }
+
+    public static ShiftTransition close(final Shift shift) {
+        return new ShiftTransition(CLOSE, shift);
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Shift getShift() {
+        return shift;
+    }
+
+    public XmlShiftTransition toXml() {
+        return new XmlShiftTransition(action, shift.toXml());
+    }
+}
@@ -0,0 +1,59 @@
+package gov.bnl.shiftClient;
+
+/**
+ * Outcome of one transition of a batch. If any transition failed, the batch was rolled back
+ * and the others report status 424.
+ *
+ */
+public class ShiftTransitionResult {
+
+    private final int index;
+    private final String action;
+    private final int status;
+    private final String message;
+    private final Shift shift;
+
+    ShiftTransitionResult(final XmlShiftTransitionResult result) {
+        this.index = result.getIndex();
+        this.action = result.getAction();
+        this.status = result.getStatus();
+        this.message = result.getMessage();
+        this.shift = result.getShift() == null ? null : new Shift(result.getShift());
+    }
+
+    /**
+     * @return position of the transition in the batch, from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @return HTTP status the transition would have had as a single request
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return reason of the failure, null on success
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the started, ended or closed shift, null on failure
+     */
+    public Shift getShift() {
+        return shift;
+    }
+
+    public boolean isApplied() {
+        return status < 300;
+    }
+}
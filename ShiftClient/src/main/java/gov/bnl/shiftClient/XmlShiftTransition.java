@@ -0,0 +1,38 @@
+package gov.bnl.shiftClient;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "transition")
+public class XmlShiftTransition {
+
+    private String action;
+    private XmlShift shift;
+
+    public XmlShiftTransition() {
+    }
+
+    public XmlShiftTransition(final String action, final XmlShift shift) {
+        this.action = action;
+        this.shift = shift;
+    }
+
+    @XmlAttribute
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(final String action) {
+        this.action = action;
+    }
+
+    @XmlElement(name = "shift")
+    public XmlShift getShift() {
+        return shift;
+    }
+
+    public void setShift(final XmlShift shift) {
+        this.shift = shift;
+    }
+}
@@ -0,0 +1,63 @@
+package gov.bnl.shiftClient;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "result")
+public class XmlShiftTransitionResult {
+
+    private int index;
+    private String action;
+    private int status;
+    private String message;
+    private XmlShift shift;
+
+    public XmlShiftTransitionResult() {
+    }
+
+    @XmlAttribute
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(final int index) {
+        this.index = index;
+    }
+
+    @XmlAttribute
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(final String action) {
+        this.action = action;
+    }
+
+    @XmlAttribute
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    @XmlAttribute
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(final String message) {
+        this.message = message;
+    }
+
+    @XmlElement(name = "shift")
+    public XmlShift getShift() {
+        return shift;
+    }
+
+    public void setShift(final XmlShift shift) {
+        this.shift = shift;
+    }
+}
@@ -0,0 +1,34 @@
+package gov.bnl.shiftClient;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.LinkedList;
+import java.util.List;
+
+@XmlRootElement(name = "results")
+public class XmlShiftTransitionResults extends LinkedList<XmlShiftTransitionResult> {
+
+    private boolean committed;
+
+    public XmlShiftTransitionResults() {
+    }
+
+    @XmlElement(name = "result")
+    public List<XmlShiftTransitionResult> getResults() {
+        return this;
+    }
+
+    public void setResults(List<XmlShiftTransitionResult> results) {
+        this.addAll(results);
+    }
+
+    @XmlAttribute
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public void setCommitted(final boolean committed) {
+        this.committed = committed;
+    }
+}
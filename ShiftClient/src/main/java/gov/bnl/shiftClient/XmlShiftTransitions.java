@@ -0,0 +1,22 @@
+package gov.bnl.shiftClient;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.LinkedList;
+import java.util.List;
+
+@XmlRootElement(name = "transitions")
+public class XmlShiftTransitions extends LinkedList<XmlShiftTransition> {
+
+    public XmlShiftTransitions() {
+    }
+
+    @XmlElement(name = "transition")
+    public List<XmlShiftTransition> getTransitions() {
+        return this;
+    }
+
+    public void setTransitions(List<XmlShiftTransition> transitions) {
+        this.addAll(transitions);
+    }
+}
@@ -0,0 +1,68 @@
+package gov.bnl.shiftClient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShiftCacheTest {
+
+    @Test
+    public void testFreshEntriesAreHits() {
+        ShiftCache cache = new ShiftCache(10, 60000);
+        assertNull(cache.get("types"));
+        cache.put("types", "value", "W/\"1-1\"", 0);
+        ShiftCache.Entry entry = cache.get("types");
+        assertTrue(entry.isFresh());
+        assertEquals("value", entry.getValue());
+        assertEquals("W/\"1-1\"", entry.getTag());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStaleEntriesAreRevalidated() throws InterruptedException {
+        ShiftCache cache = new ShiftCache(10, 1);
+        cache.put("shift/1", "value", "W/\"1-1\"", 0);
+        Thread.sleep(5);
+        ShiftCache.Entry entry = cache.get("shift/1");
+        assertFalse(entry.isFresh());
+        assertEquals(1, cache.getMisses());
+        cache.revalidated(entry);
+        assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ShiftCache cache = new ShiftCache(2, 60000);
+        cache.put("a", "a", null, 0);
+        cache.put("b", "b", null, 0);
+        cache.get("a");
+        cache.put("c", "c", null, 0);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testInvalidation() {
+        ShiftCache cache = new ShiftCache(10, 60000);
+        cache.put("open/a", "a", null, 0);
+        cache.put("open/b", "b", null, 0);
+        cache.put("shift/1", "1", null, 0);
+        cache.invalidatePrefix("open/");
+        cache.invalidate("shift/1", "shift/2");
+        assertEquals(0, cache.size());
+        assertEquals(3, cache.getInvalidations());
+    }
+
+    @Test
+    public void testResultFetchedBeforeInvalidationIsNotCached() {
+        ShiftCache cache = new ShiftCache(10, 60000);
+        long generation = cache.getGeneration();
+        cache.invalidatePrefix("open/");
+        cache.put("open/a", "a", null, generation);
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,64 @@
+-- Query plans of the statements issued by ShiftManager, for checking that
+-- the schema version 2 to 4 indexes are used. Run against a populated database:
+--
+--   mysql shift < explain-shift-queries.sql
+--
+-- The expected index is given for each statement; except for IN lists and searches,
+-- "Using filesort" should not appear in the Extra column. On a nearly empty table MySQL may prefer a full scan,
+-- so check with a realistic number of shifts (ANALYZE TABLE `shift` first).
+--
+-- ShiftQueryPlanTest checks the filtered statements (range, at/overlaps, type, owner,
+-- leadOperator, status, statistics) against the embedded H2 database on every build.
+-- The descending orderings of the unfiltered and "after" statements and the FULLTEXT plan
+-- of q= are MySQL only and out of scope there; check them with this script.
+
+ANALYZE TABLE `shift`;
+
+-- GET /shift: latest shifts. Expected key: idx_shift_start_id (backward index scan)
+EXPLAIN SELECT * FROM `shift` ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- GET /shift?after=...: keyset page. Expected key: idx_shift_start_id, type range
+EXPLAIN SELECT * FROM `shift`
+    WHERE `start_date` < '2015-01-01 00:00:00'
+       OR (`start_date` = '2015-01-01 00:00:00' AND `id` < 1000)
+    ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- GET /shift?type=...: shifts of a type. Expected key: idx_shift_type_start
+EXPLAIN SELECT * FROM `shift` WHERE `type_id` = 1 ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- Open shift of a type (OpenShiftIndex rebuild). Expected key: idx_shift_type_open, ref on (type_id, end_date)
+EXPLAIN SELECT * FROM `shift` WHERE `type_id` = 1 AND `end_date` IS NULL ORDER BY `start_date`;
+
+-- GET /shift?from=...&to=...: start date range. Expected key: idx_shift_start_id, type range
+EXPLAIN SELECT * FROM `shift`
+    WHERE `start_date` BETWEEN '2014-01-01 00:00:00' AND '2014-02-01 00:00:00'
+    ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- GET /shift?at=...: shifts running at a time. The start date is bounded below by the longest shift
+-- (8 hours here), see ShiftLengths. Expected key: idx_shift_start_id, type range
+EXPLAIN SELECT * FROM `shift`
+    WHERE `start_date` BETWEEN '2014-01-01 04:00:00' AND '2014-01-01 12:00:00'
+      AND (`end_date` IS NULL OR `end_date` > '2014-01-01 12:00:00')
+    ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- Oldest open shift (ShiftLengths). Expected key: idx_shift_end_start, "Select tables optimized away"
+EXPLAIN SELECT MIN(`start_date`) FROM `shift` WHERE `end_date` IS NULL;
+
+-- GET /shift?owner=...: Expected key: idx_shift_owner_start
+EXPLAIN SELECT * FROM `shift` WHERE `owner` = 'operator' ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- GET /shift?leadOperator=...: Expected key: idx_shift_lead_start
+EXPLAIN SELECT * FROM `shift` WHERE `lead_operator` IN ('operator', 'shift') ORDER BY `start_date` DESC, `id` DESC LIMIT 500;
+
+-- GET /shift/statistics?from=...&to=...&groupBy=type. Expected key: idx_shift_start_id, type range
+EXPLAIN SELECT t.name, COUNT(*), COUNT(s.end_date), SUM(TIMESTAMPDIFF(SECOND, s.start_date, s.end_date))
+    FROM `shift` s JOIN `type` t ON t.id = s.type_id
+    WHERE s.start_date BETWEEN '2014-01-01 00:00:00' AND '2014-01-02 00:00:00'
+    GROUP BY t.name ORDER BY t.name;
+
+-- GET /shift?q=... (MySQL only, no FULLTEXT index on H2): full-text search, by relevance. Expected key: idx_shift_text, type fulltext;
+-- the matches are sorted by relevance (filesort)
+EXPLAIN SELECT s.* FROM `shift` s
+    WHERE MATCH (s.description, s.report) AGAINST ('quench' IN NATURAL LANGUAGE MODE)
+    ORDER BY MATCH (s.description, s.report) AGAINST ('quench' IN NATURAL LANGUAGE MODE) DESC,
+        s.start_date DESC, s.id DESC LIMIT 500;
@@ -0,0 +1,38 @@
+-- Shift schema version 2: typed user columns and secondary indexes.
+--
+-- Upgrades a database created by a shift-base.sql older than version 2.
+-- The user columns become varchar(250), the length already declared by the Shift entity.
+-- Check that no stored value is longer before applying:
+--
+--   SELECT MAX(CHAR_LENGTH(`owner`)), MAX(CHAR_LENGTH(`lead_operator`)),
+--          MAX(CHAR_LENGTH(`on_shift_personal`)), MAX(CHAR_LENGTH(`close_shift_user`))
+--   FROM `shift`;
+
+CREATE TABLE IF NOT EXISTS `schema_version` (
+    `version` int NOT NULL,
+    `description` varchar(250) NOT NULL,
+    `applied_on` datetime NOT NULL,
+    PRIMARY KEY (`version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT IGNORE INTO `schema_version` (`version`, `description`, `applied_on`) VALUES
+    (1, 'base schema', NOW());
+
+ALTER TABLE `shift`
+    MODIFY `owner` varchar(250) NOT NULL,
+    MODIFY `lead_operator` varchar(250),
+    MODIFY `on_shift_personal` varchar(250),
+    MODIFY `close_shift_user` varchar(250),
+    -- open shift of a type
+    ADD KEY `idx_shift_type_open` (`type_id`, `end_date`, `start_date`),
+    -- shifts of a type by start date
+    ADD KEY `idx_shift_type_start` (`type_id`, `start_date`),
+    -- default ordering, from/to ranges and keyset pagination
+    ADD KEY `idx_shift_start_id` (`start_date`, `id`),
+    ADD KEY `idx_shift_owner_start` (`owner`, `start_date`),
+    ADD KEY `idx_shift_lead_start` (`lead_operator`, `start_date`),
+    ADD KEY `idx_shift_on_shift` (`on_shift_personal`),
+    ADD KEY `idx_shift_close_user` (`close_shift_user`);
+
+INSERT INTO `schema_version` (`version`, `description`, `applied_on`) VALUES
+    (2, 'typed user columns and secondary indexes', NOW());
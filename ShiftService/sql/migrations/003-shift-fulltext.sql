@@ -0,0 +1,11 @@
+-- Shift schema version 3: full-text index for GET /shift?q=...
+--
+-- Upgrades a database at schema version 2. InnoDB FULLTEXT indexes need MySQL 5.6 or later.
+-- Words shorter than innodb_ft_min_token_size (default 3) and stopwords are not indexed.
+-- Building the index rewrites the table; on a large table run this outside working hours.
+
+ALTER TABLE `shift`
+    ADD FULLTEXT KEY `idx_shift_text` (`description`, `report`);
+
+INSERT INTO `schema_version` (`version`, `description`, `applied_on`) VALUES
+    (3, 'full-text index on description and report', NOW());
@@ -0,0 +1,10 @@
+-- Shift schema version 4: index of the open shifts by start date
+--
+-- Upgrades a database at schema version 3. GET /shift?at=... and ?overlaps=... look up the
+-- oldest open shift through this index to bound the start date range they scan.
+
+ALTER TABLE `shift`
+    ADD KEY `idx_shift_end_start` (`end_date`, `start_date`);
+
+INSERT INTO `schema_version` (`version`, `description`, `applied_on`) VALUES
+    (4, 'index of the open shifts by start date', NOW());
@@ -1,5 +1,6 @@
-DROP TABLE IF EXIST 'shift';
-DROP TABLE IF EXIST 'type';
+DROP TABLE IF EXISTS `shift`;
+DROP TABLE IF EXISTS `type`;
+DROP TABLE IF EXISTS `schema_version`;
 
 
 CREATE TABLE `type` (
@@ -11,17 +12,38 @@ CREATE TABLE `type` (
 
 CREATE TABLE `shift` (
     `id` bigint NOT NULL auto_increment,
-   `owner` text NOT NULL,
+   `owner` varchar(250) NOT NULL,
    `description` text,
-   `lead_operator` text,
-   `on_shift_personal` text,
+   `lead_operator` varchar(250),
+   `on_shift_personal` varchar(250),
    `report` text,
    `type_id` bigint NOT NULL,
-   `close_shift_user` text,
+   `close_shift_user` varchar(250),
    `start_date` datetime NOT NULL,
    `end_date` datetime,
    PRIMARY KEY  (`id`),
+   KEY `idx_shift_type_open` (`type_id`, `end_date`, `start_date`),
+   KEY `idx_shift_type_start` (`type_id`, `start_date`),
+   KEY `idx_shift_start_id` (`start_date`, `id`),
+   KEY `idx_shift_end_start` (`end_date`, `start_date`),
+   KEY `idx_shift_owner_start` (`owner`, `start_date`),
+   KEY `idx_shift_lead_start` (`lead_operator`, `start_date`),
+   KEY `idx_shift_on_shift` (`on_shift_personal`),
+   KEY `idx_shift_close_user` (`close_shift_user`),
+   FULLTEXT KEY `idx_shift_text` (`description`, `report`),
    CONSTRAINT `type_id_fk` FOREIGN KEY (`type_id`) REFERENCES `type` (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+CREATE TABLE `schema_version` (
+    `version` int NOT NULL,
+    `description` varchar(250) NOT NULL,
+    `applied_on` datetime NOT NULL,
+    PRIMARY KEY (`version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO `schema_version` (`version`, `description`, `applied_on`) VALUES
+    (1, 'base schema', NOW()),
+    (2, 'typed user columns and secondary indexes', NOW()),
+    (3, 'full-text index on description and report', NOW()),
+    (4, 'index of the open shifts by start date', NOW());
 
@@ -1,7 +1,9 @@
 package gov.bnl.shift;
 
+import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
 import javax.ws.rs.core.Response;
@@ -9,6 +11,7 @@ import javax.xml.ws.WebServiceException;
 
 /**
  * Database connection handling: connections and transactions.
+ * Used for plain JDBC access; JPA (ShiftManager) obtains its own connections.
  *
  */
 public class DbConnection {
@@ -21,19 +24,126 @@ public class DbConnection {
         }
     };
     private static final String dbResourceName = "jdbc/shift";
+    private static DataSource dataSource = null;
+    private static DataSource metered = null;
     private Connection con;
     private DataSource ds;
 
     public DbConnection() {
-        try {
-            InitialContext ic = new InitialContext();
-            ds = (DataSource) ic.lookup("java:comp/env/" + dbResourceName);
-        } catch (Exception e) {
-            throw new IllegalStateException("Cannot find JDBC DataSource '"
-                    + dbResourceName + "'", e);
+        ds = lookupDataSource();
+    }
+
+    /**
+     * Makes the service use <tt>dataSource</tt> instead of the container's jdbc/shift.
+     * Has to be called before the first database access.
+     *
+     * @param dataSource data source to use
+     */
+    public static synchronized void setDataSource(final DataSource dataSource) {
+        DbConnection.dataSource = dataSource;
+        metered = null;
+    }
+
+    /**
+     * Returns the data source of the service (see {@link #getDataSource()}, jdbc/shift otherwise),
+     * recording the connection wait times in the {@link ShiftMetrics}.
+     *
+     * @return data source
+     * @throws IllegalStateException if jdbc/shift cannot be found
+     */
+    public static synchronized DataSource lookupDataSource() {
+        if (metered == null) {
+            DataSource ds = getDataSource();
+            if (ds == null) {
+                try {
+                    InitialContext ic = new InitialContext();
+                    ds = (DataSource) ic.lookup("java:comp/env/" + dbResourceName);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Cannot find JDBC DataSource '"
+                            + dbResourceName + "'", e);
+                }
+            }
+            metered = new MeteredDataSource(ds);
+        }
+        return metered;
+    }
+
+    /**
+     * DataSource recording how long getting a connection from the pool takes.
+     */
+    static class MeteredDataSource implements DataSource {
+
+        private final DataSource ds;
+
+        MeteredDataSource(final DataSource ds) {
+            this.ds = ds;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            final long start = System.nanoTime();
+            final Connection c = ds.getConnection();
+            ShiftMetrics.getInstance().connectionAcquired(start);
+            return c;
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException {
+            final long start = System.nanoTime();
+            final Connection c = ds.getConnection(username, password);
+            ShiftMetrics.getInstance().connectionAcquired(start);
+            return c;
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return ds.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(final PrintWriter out) throws SQLException {
+            ds.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(final int seconds) throws SQLException {
+            ds.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return ds.getLoginTimeout();
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return ds.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(final Class<T> iface) throws SQLException {
+            return iface.isInstance(ds) ? iface.cast(ds) : ds.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+            return iface.isInstance(ds) || ds.isWrapperFor(iface);
         }
     }
 
+    /**
+     * Returns the data source used instead of jdbc/shift: the one set with
+     * {@link #setDataSource(DataSource)}, or the {@link EmbeddedDatabase} if selected.
+     *
+     * @return data source, or null to use jdbc/shift
+     */
+    public static synchronized DataSource getDataSource() {
+        if (dataSource == null && EmbeddedDatabase.isSelected()) {
+            dataSource = EmbeddedDatabase.getInstance().getDataSource();
+        }
+        return dataSource;
+    }
+
     /**
      * Returns the DbConnection instance.
      *
@@ -67,6 +177,7 @@ public class DbConnection {
         if (con != null) {
             try {
                 con.rollback();
+                con.setReadOnly(false);
                 con.close();
                 con = null;
             } catch (Exception e) {
@@ -76,19 +187,32 @@ public class DbConnection {
     }
 
     /**
-     * Begins a database transaction.
+     * Begins a database transaction (read committed).
      * @throws ShiftFinderException wrapping an SQLException
      */
     public void beginTransaction() throws ShiftFinderException {
         getConnection();
         try {
-            con.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
             con.setAutoCommit(false);
         } catch (Exception e) {
             throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR, "Could not begin db transaction", e);
         }
     }
 
+    /**
+     * Begins a read-only database transaction (read committed).
+     * @throws ShiftFinderException wrapping an SQLException
+     */
+    public void beginReadOnlyTransaction() throws ShiftFinderException {
+        beginTransaction();
+        try {
+            con.setReadOnly(true);
+        } catch (Exception e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR, "Could not begin db transaction", e);
+        }
+    }
+
     /**
      * Ends a transaction by committing.
      * @throws ShiftFinderException wrapping an SQLException
@@ -0,0 +1,224 @@
+package gov.bnl.shift;
+
+import org.apache.commons.dbcp.BasicDataSource;
+
+import javax.naming.InitialContext;
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded H2 database in MySQL mode with the shift schema, used instead of the container's
+ * jdbc/shift data source when <tt>shift/database</tt> is <tt>embedded</tt> (JNDI resource,
+ * or system property <tt>shift.database</tt>). Runs the service without MySQL and Glassfish,
+ * e.g. for load tests and benchmarks. The database is in memory unless <tt>shift/embeddedUrl</tt>
+ * names another H2 URL; the schema is created from <tt>shift-base.sql</tt> if it is missing.
+ * The H2 driver is packaged with the <tt>embedded</tt> Maven profile.
+ *
+ */
+public class EmbeddedDatabase {
+
+    private static final Logger log = Logger.getLogger(EmbeddedDatabase.class.getName());
+
+    private static final String defaultUrl = "jdbc:h2:mem:shift;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    /**
+     * Owners of the shifts written by {@link #seed(int, int)}.
+     */
+    public static final List<String> SEED_OWNERS = Collections.unmodifiableList(Arrays.asList("operator",
+            "physicist", "engineer", "coordinator", "manager", "accelerator", "cryo", "controls", "vacuum", "rf",
+            "beams", "safety"));
+
+    /**
+     * Words of the descriptions of the shifts written by {@link #seed(int, int)}.
+     */
+    public static final List<String> SEED_WORDS = Collections.unmodifiableList(Arrays.asList("injection",
+            "ramp", "store", "beam", "study", "tuning", "quench", "vacuum", "cryo", "access", "maintenance",
+            "startup", "physics", "orbit", "lattice", "abort"));
+
+    private static final long seedShiftLength = TimeUnit.HOURS.toMillis(8);
+    private static final int seedBatchSize = 1000;
+
+    private static final boolean selected = "embedded".equalsIgnoreCase(lookup("shift/database", "jndi"));
+    private static EmbeddedDatabase instance = null;
+
+    private final BasicDataSource dataSource;
+
+    private EmbeddedDatabase(final String url) {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxActive(64);
+    }
+
+    /**
+     * Looks up a setting as system property (with '.' for '/') or JNDI resource.
+     */
+    private static String lookup(final String name, final String defaultValue) {
+        String value = System.getProperty(name.replace('/', '.'));
+        if (value != null) {
+            log.log(Level.CONFIG, "Found system property {0}: {1}", new Object[]{name, value});
+            return value;
+        }
+        try {
+            value = new InitialContext().lookup(name).toString().trim();
+            log.log(Level.CONFIG, "Found {0}: {1}", new Object[]{name, value});
+            return value;
+        } catch (Exception ex) {
+            log.log(Level.CONFIG, "Using default {0}: {1}", new Object[]{name, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Tells whether the service is configured to use the embedded database.
+     *
+     * @return true if <tt>shift/database</tt> is <tt>embedded</tt>
+     */
+    public static boolean isSelected() {
+        return selected;
+    }
+
+    /**
+     * Returns the (singleton) instance of EmbeddedDatabase, starting the database on first use.
+     *
+     * @return the instance of EmbeddedDatabase
+     * @throws IllegalStateException if the database or its schema cannot be created
+     */
+    public static synchronized EmbeddedDatabase getInstance() {
+        if (instance == null) {
+            final EmbeddedDatabase db = new EmbeddedDatabase(lookup("shift/embeddedUrl", defaultUrl));
+            try {
+                db.createSchema();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the shift schema", e);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not create the embedded shift database", e);
+            }
+            instance = db;
+        }
+        return instance;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Fills the empty database with synthetic shifts, for load tests and benchmarks.
+     * The types are named <tt>type1</tt> to <tt>type&lt;types&gt;</tt>. The shifts of all types
+     * run side by side, one after the other, 8 hours each, up to now; the last shift of each type
+     * is open, the one before is ended but not signed, all others are signed.
+     *
+     * @param shifts number of shifts
+     * @param types number of types
+     * @return start of the first shift, in ms
+     * @throws SQLException if the shifts cannot be written
+     */
+    public long seed(final int shifts, final int types) throws SQLException {
+        final long firstStart = System.currentTimeMillis() - (shifts / types + 1) * seedShiftLength;
+        final Random random = new Random(42);
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO type (id, name) VALUES (?, ?)")) {
+                for (int t = 1; t <= types; t++) {
+                    ps.setInt(1, t);
+                    ps.setString(2, "type" + t);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO shift (owner, description,"
+                    + " lead_operator, on_shift_personal, report, type_id, close_shift_user, start_date, end_date)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                final int rounds = (shifts - 1) / types;
+                for (int i = 0; i < shifts; i++) {
+                    final int round = i / types;
+                    final long start = firstStart + round * seedShiftLength + i % types * 60000L;
+                    ps.setString(1, SEED_OWNERS.get(random.nextInt(SEED_OWNERS.size())));
+                    ps.setString(2, SEED_WORDS.get(random.nextInt(SEED_WORDS.size())) + " "
+                            + SEED_WORDS.get(random.nextInt(SEED_WORDS.size())));
+                    ps.setString(3, "lead" + random.nextInt(50));
+                    ps.setString(4, "crew" + random.nextInt(200));
+                    ps.setString(5, "report of shift " + i);
+                    ps.setInt(6, i % types + 1);
+                    ps.setString(7, round < rounds - 1 ? "lead" + random.nextInt(50) : null);
+                    ps.setTimestamp(8, new Timestamp(start));
+                    ps.setTimestamp(9, round < rounds ? new Timestamp(start + seedShiftLength) : null);
+                    ps.addBatch();
+                    if (i % seedBatchSize == seedBatchSize - 1) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            con.commit();
+        }
+        log.info("seeded the embedded shift database with " + shifts + " shifts of " + types + " types");
+        return firstStart;
+    }
+
+    private void createSchema() throws IOException, SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try (ResultSet rs = con.getMetaData().getTables(null, null, "schema_version", null)) {
+                if (rs.next()) {
+                    log.info("using the existing embedded shift database");
+                    return;
+                }
+            }
+            try (Statement st = con.createStatement()) {
+                for (String statement : readSchema()) {
+                    st.execute(statement);
+                }
+            }
+            log.info("created the embedded shift database");
+        }
+    }
+
+    /**
+     * Returns the statements of shift-base.sql, without the MySQL table options and FULLTEXT
+     * indexes H2 does not know; searches fall back to LIKE on the embedded database.
+     */
+    private static List<String> readSchema() throws IOException {
+        final InputStream in = EmbeddedDatabase.class.getResourceAsStream("/shift-base.sql");
+        if (in == null) {
+            throw new IOException("shift-base.sql is not on the classpath");
+        }
+        final StringBuilder sql = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().startsWith("--") && !line.trim().startsWith("FULLTEXT")) {
+                    sql.append(line).append('\n');
+                }
+            }
+        }
+        final List<String> statements = new ArrayList<String>();
+        for (String statement : sql.toString().split(";")) {
+            statement = statement.replaceAll("\\)\\s*ENGINE=[^;]*$", ")").trim();
+            if (!statement.isEmpty()) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+}
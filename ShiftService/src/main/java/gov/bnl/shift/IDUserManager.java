@@ -24,6 +24,7 @@ public class IDUserManager extends UserManager {
 
     private static final String defaultCommand = "id";
     private static final String command;
+    private static final Pattern groupPattern = Pattern.compile("\\((.*?)\\)");
 
     static {
         String newCommand = defaultCommand;
@@ -43,11 +44,11 @@ public class IDUserManager extends UserManager {
             BufferedInputStream bis = new BufferedInputStream(in);
             ByteArrayOutputStream buf = new ByteArrayOutputStream();
             try {
-                int result = bis.read();
-                while (result != -1) {
-                    byte b = (byte) result;
-                    buf.write(b);
-                    result = bis.read();
+                byte[] chunk = new byte[1024];
+                int read = bis.read(chunk);
+                while (read != -1) {
+                    buf.write(chunk, 0, read);
+                    read = bis.read(chunk);
                 }
                 return buf.toString();
             } finally {
@@ -72,8 +73,7 @@ public class IDUserManager extends UserManager {
                 }
                 output = output.substring(output.indexOf("groups"));
 
-                Pattern pattern = Pattern.compile("\\((.*?)\\)");
-                Matcher match = pattern.matcher(output);
+                Matcher match = groupPattern.matcher(output);
                 while (match.find()) {
                     groups.add(match.group(1));
                 }
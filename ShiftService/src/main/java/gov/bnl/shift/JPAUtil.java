@@ -1,26 +1,54 @@
 package gov.bnl.shift;
 
+import org.eclipse.persistence.jpa.JpaHelper;
+
 import javax.persistence.*;
 import org.apache.log4j.Logger;
+import java.util.HashMap;
+import java.util.Map;
 
 public class JPAUtil {
 
-    private static final EntityManagerFactory factory;
+    private static volatile EntityManagerFactory factory = null;
     private static volatile long aliasCount = 0;
     private static final Logger logger = Logger.getLogger(gov.bnl.shift.JPAUtil.class);
+    private static final int jpqlParseCacheSize = 1000;
 
-    static {
-        try {
-            factory = Persistence.createEntityManagerFactory("shift");
-
-        } catch (Throwable ex) {
-            logger.error("Initial SessionFactory creation failed", ex);
-            throw new ExceptionInInitializerError(ex);
+    public static EntityManagerFactory getEntityManagerFactory() {
+        EntityManagerFactory f = factory;
+        if (f == null) {
+            synchronized (JPAUtil.class) {
+                if (factory == null) {
+                    final Map<String, Object> properties = new HashMap<String, Object>();
+                    try {
+                        properties.put("javax.persistence.nonJtaDataSource", DbConnection.lookupDataSource());
+                    } catch (IllegalStateException ex) {
+                        logger.warn("Using the data source of persistence.xml, connection waits are not measured");
+                    }
+                    try {
+                        factory = Persistence.createEntityManagerFactory("shift", properties);
+                        // room for the statement shapes of ShiftQuery.toJpql besides the other queries
+                        JpaHelper.getServerSession(factory).getProject().setJPQLParseCacheMaxSize(jpqlParseCacheSize);
+                    } catch (RuntimeException ex) {
+                        logger.error("Initial SessionFactory creation failed", ex);
+                        throw ex;
+                    }
+                }
+                f = factory;
+            }
         }
+        return f;
     }
 
-    public static EntityManagerFactory getEntityManagerFactory() {
-        return factory;
+    /**
+     * Creates a new EntityManager. EntityManagers are not thread safe:
+     * each caller owns the returned instance and has to close it when done.
+     *
+     * @return new EntityManager
+     */
+    public static EntityManager createEntityManager() {
+        ShiftMetrics.getInstance().entityManagerCreated();
+        return getEntityManagerFactory().createEntityManager();
     }
 
     public static void startTransaction(EntityManager em) {
@@ -51,7 +79,7 @@ public class JPAUtil {
         EntityManager em = null;
 
         try {
-            em = JPAUtil.getEntityManagerFactory().createEntityManager();
+            em = JPAUtil.createEntityManager();
             JPAUtil.startTransaction(em);
             em.persist(o);
             JPAUtil.finishTransacton(em);
@@ -59,6 +87,10 @@ public class JPAUtil {
         } catch (PersistenceException e) {
             JPAUtil.transactionFailed(em);
             throw e;
+        } finally {
+            if (em != null && em.isOpen()) {
+                em.close();
+            }
         }
     }
 
@@ -66,7 +98,7 @@ public class JPAUtil {
         EntityManager em = null;
 
         try {
-            em = JPAUtil.getEntityManagerFactory().createEntityManager();
+            em = JPAUtil.createEntityManager();
             JPAUtil.startTransaction(em);
             o = em.merge(o);
             JPAUtil.finishTransacton(em);
@@ -75,6 +107,10 @@ public class JPAUtil {
         } catch (PersistenceException e) {
             JPAUtil.transactionFailed(em);
             throw e;
+        } finally {
+            if (em != null && em.isOpen()) {
+                em.close();
+            }
         }
     }
 
@@ -0,0 +1,114 @@
+package gov.bnl.shift;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+/**
+ * Bounded pool of LDAP directory contexts shared by all request threads.
+ * At most <tt>maxSize</tt> contexts are open at any time; callers wait up to
+ * <tt>timeout</tt> ms for one to become available.
+ *
+ */
+public class LDAPContextPool {
+
+    private static final Logger log = Logger.getLogger(LDAPContextPool.class.getName());
+
+    /**
+     * Opens new directory contexts for the pool.
+     */
+    public interface ContextFactory {
+        DirContext create() throws NamingException;
+    }
+
+    private final ContextFactory factory;
+    private final BlockingQueue<DirContext> idle = new LinkedBlockingQueue<DirContext>();
+    private final Semaphore permits;
+    private final long timeout;
+    private final AtomicLong created = new AtomicLong();
+
+    public LDAPContextPool(final ContextFactory factory, final int maxSize, final long timeout) {
+        this.factory = factory;
+        this.permits = new Semaphore(maxSize, true);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Borrows a context, reusing an idle one or opening a new one.
+     * Every borrowed context has to be given back through {@link #release(DirContext, boolean)}.
+     *
+     * @return directory context
+     * @throws NamingException if no context could be opened
+     */
+    public DirContext borrow() throws NamingException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new NamingException("Timed out waiting for an LDAP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NamingException("Interrupted while waiting for an LDAP connection");
+        }
+        final DirContext ctx = idle.poll();
+        if (ctx != null) {
+            return ctx;
+        }
+        try {
+            final DirContext newCtx = factory.create();
+            created.incrementAndGet();
+            return newCtx;
+        } catch (NamingException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed context back to the pool.
+     *
+     * @param ctx borrowed context
+     * @param broken true if the context failed and must not be reused
+     */
+    public void release(final DirContext ctx, final boolean broken) {
+        try {
+            if (broken) {
+                try {
+                    ctx.close();
+                } catch (NamingException e) {
+                    log.log(Level.FINE, "Could not close broken LDAP connection", e);
+                }
+            } else {
+                idle.offer(ctx);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Returns the number of contexts opened over the lifetime of the pool.
+     *
+     * @return number of created contexts
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Returns the number of open contexts currently not in use.
+     *
+     * @return number of idle contexts
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+}
@@ -5,11 +5,15 @@ package gov.bnl.shift;
 import java.security.Principal;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Resource;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
@@ -17,12 +21,18 @@ import javax.naming.directory.SearchResult;
 
 /**
  * Owner (group) membership management: LDAP connection and binding.
+ * Connections are taken from a bounded pool shared by all requests.
  *
  */
 public class LDAPUserManager extends UserManager {
-    private ThreadLocal<DirContext> ctx = new ThreadLocal<DirContext>();
+    private static final Logger log = Logger.getLogger(LDAPUserManager.class.getName());
     private static final String ldapResourceName = "shift/ldapManagerConnection";
 
+    private static final int defaultPoolSize = 8;
+    private static final long defaultPoolTimeout = 5000;
+
+    private final LDAPContextPool pool;
+
     /**
      * LDAP field name for the member UID
      */
@@ -33,45 +43,91 @@ public class LDAPUserManager extends UserManager {
      */
     @Resource(name="ldapGroupTargetField") protected String groupTargetField = "s";
 
-
-    private DirContext getJndiContext() {
-        DirContext dirctx = this.ctx.get();
-        if (dirctx == null) {
-            try {
-                Context initCtx = new InitialContext();
-                dirctx = (DirContext) initCtx.lookup(ldapResourceName);
-                this.ctx.set(dirctx);
-            } catch (NamingException e ) {
-                throw new IllegalStateException("Cannot find JNDI LDAP resource '"
-                        + ldapResourceName + "'", e);
+    public LDAPUserManager() {
+        this.pool = new LDAPContextPool(new LDAPContextPool.ContextFactory() {
+            @Override
+            public DirContext create() throws NamingException {
+                return getJndiContext();
             }
+        }, (int) lookupNumber("shift/ldapPoolSize", defaultPoolSize),
+                lookupNumber("shift/ldapPoolTimeout", defaultPoolTimeout));
+    }
+
+    /**
+     * Creates an LDAPUserManager using the given pool and group cache configuration.
+     *
+     * @param pool LDAP context pool
+     * @param cacheSize maximum number of principals kept in the group cache
+     * @param cacheExpiry time in ms after which cached group memberships are retrieved again
+     * @param negativeCacheExpiry time in ms after which unknown users are looked up again
+     */
+    LDAPUserManager(final LDAPContextPool pool, final int cacheSize, final long cacheExpiry,
+                    final long negativeCacheExpiry) {
+        super(cacheSize, cacheExpiry, negativeCacheExpiry);
+        this.pool = pool;
+    }
+
+    private static DirContext getJndiContext() {
+        try {
+            Context initCtx = new InitialContext();
+            return (DirContext) initCtx.lookup(ldapResourceName);
+        } catch (NamingException e ) {
+            throw new IllegalStateException("Cannot find JNDI LDAP resource '"
+                    + ldapResourceName + "'", e);
         }
-        return dirctx;
     }
 
     @Override
     protected Set<String> getGroups(Principal user) {
+        try {
+            try {
+                return searchGroups(user);
+            } catch (CommunicationException e) {
+                log.log(Level.FINE, "Retrying group search on a new LDAP connection", e);
+            } catch (ServiceUnavailableException e) {
+                log.log(Level.FINE, "Retrying group search on a new LDAP connection", e);
+            }
+            return searchGroups(user);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error while retrieving group information for user '"
+                    + user.getName() + "'", e);
+        }
+    }
+
+    private Set<String> searchGroups(Principal user) throws NamingException {
+        final DirContext dirctx = pool.borrow();
+        boolean broken = true;
         try {
             Set<String> groups = new HashSet<String>();
-            DirContext dirctx = getJndiContext();
             SearchControls ctrls = new SearchControls();
             ctrls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            ctrls.setReturningAttributes(new String[]{groupTargetField});
 
             String searchfilter = "(" + memberUidField + "=" + user.getName() + ")";
             NamingEnumeration<SearchResult> result = dirctx.search("", searchfilter, ctrls);
-
-            while (result.hasMore()) {
-                Attribute att = result.next().getAttributes().get(groupTargetField);
-                if (att != null) {
-                    groups.add((String)att.get());
+            try {
+                while (result.hasMore()) {
+                    Attribute att = result.next().getAttributes().get(groupTargetField);
+                    if (att != null) {
+                        groups.add((String)att.get());
+                    }
                 }
+            } finally {
+                result.close();
             }
+            broken = false;
             return groups;
-        } catch (Exception e) {
-            throw new IllegalStateException("Error while retrieving group information for user '"
-                    + user.getName() + "'", e);
+        } finally {
+            pool.release(dirctx, broken);
         }
     }
-}
-
 
+    /**
+     * Returns the LDAP context pool used by this manager.
+     *
+     * @return context pool
+     */
+    public LDAPContextPool getPool() {
+        return pool;
+    }
+}
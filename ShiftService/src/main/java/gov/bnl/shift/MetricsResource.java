@@ -0,0 +1,25 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * Top level Jersey HTTP methods for the service metrics
+ *
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    /**
+     * GET method for retrieving the {@link ShiftMetrics} in the Prometheus text format.
+     *
+     * @return HTTP Response
+     */
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public Response metrics() {
+        return Response.ok(ShiftMetrics.getInstance().toPrometheus()).build();
+    }
+}
@@ -0,0 +1,119 @@
+package gov.bnl.shift;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * In-memory index of the currently open (not yet ended) shift of each type.
+ * It is rebuilt from the database at startup and kept up to date by
+ * {@link ShiftManager#startShift(Shift)} and {@link ShiftManager#endShift(Shift)}.
+ * Shifts started or ended behind the back of this service instance are only
+ * seen after the next {@link #rebuild()}.
+ *
+ */
+public class OpenShiftIndex {
+
+    private static final Logger log = Logger.getLogger(OpenShiftIndex.class.getName());
+
+    private static OpenShiftIndex instance = new OpenShiftIndex();
+
+    private final Map<Integer, Shift> open = new ConcurrentHashMap<Integer, Shift>();
+    private volatile boolean loaded = false;
+
+    private OpenShiftIndex() {
+    }
+
+    /**
+     * Returns the (singleton) instance of OpenShiftIndex
+     *
+     * @return the instance of OpenShiftIndex
+     */
+    public static OpenShiftIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reloads the open shifts from the database. If a type has several open shifts,
+     * the one started last is kept.
+     *
+     * @throws ShiftFinderException wrapping a JPA exception
+     */
+    public synchronized void rebuild() throws ShiftFinderException {
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
+        try {
+            final CriteriaBuilder cb = em.getCriteriaBuilder();
+            final CriteriaQuery<Shift> cq = cb.createQuery(Shift.class);
+            final Root<Shift> from = cq.from(Shift.class);
+            cq.select(from);
+            cq.where(cb.isNull(from.get(Shift_.endDate)));
+            cq.orderBy(cb.asc(from.get(Shift_.startDate)));
+            final List<Shift> rs = em.createQuery(cq).getResultList();
+            final Map<Integer, Shift> latest = new HashMap<Integer, Shift>();
+            for (Shift shift : rs) {
+                latest.put(shift.getType().getId(), shift);
+            }
+            open.clear();
+            open.putAll(latest);
+            loaded = true;
+            log.fine("indexed " + latest.size() + " open shifts");
+        } catch (Exception e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
+                    "JPA exception: " + e);
+        } finally {
+            em.close();
+            ShiftMetrics.getInstance().queried("rebuildOpenShifts", start);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the open shift of the given type.
+     *
+     * @param typeId type id
+     * @return the open shift, or null if all shifts of this type are ended
+     */
+    public Shift get(final int typeId) {
+        ensureLoaded();
+        return open.get(typeId);
+    }
+
+    /**
+     * Records a newly started shift.
+     *
+     * @param shift started shift, with its type set
+     */
+    public synchronized void started(final Shift shift) {
+        if (loaded) {
+            open.put(shift.getType().getId(), shift);
+        }
+    }
+
+    /**
+     * Records an ended shift.
+     *
+     * @param shift ended shift, with its type set
+     */
+    public synchronized void ended(final Shift shift) {
+        if (loaded) {
+            open.remove(shift.getType().getId(), shift);
+        }
+    }
+}
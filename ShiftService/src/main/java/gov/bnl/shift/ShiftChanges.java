@@ -0,0 +1,97 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.core.EntityTag;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of the shift data served by this service instance: a counter bumped by every
+ * shift start, end or close and every reload of the shift types, together with the time
+ * of the last change. Used for conditional GETs, so pollers get a 304 without a query.
+ * The counter starts over when the service restarts, so the entity tags also carry
+ * the startup time of the instance.
+ * As for {@link OpenShiftIndex}, changes made behind the back of this service instance
+ * are not seen.
+ *
+ */
+public class ShiftChanges {
+
+    private static ShiftChanges instance = new ShiftChanges();
+
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong version = new AtomicLong();
+    private volatile long lastModified = truncate(System.currentTimeMillis());
+
+    private ShiftChanges() {
+    }
+
+    /**
+     * Returns the (singleton) instance of ShiftChanges
+     *
+     * @return the instance of ShiftChanges
+     */
+    public static ShiftChanges getInstance() {
+        return instance;
+    }
+
+    // HTTP dates have a one second resolution
+    private static long truncate(final long millis) {
+        return millis - millis % 1000;
+    }
+
+    /**
+     * Records a change of the shift data.
+     *
+     * @return the new version
+     */
+    public long changed() {
+        final long v = version.incrementAndGet();
+        lastModified = truncate(System.currentTimeMillis());
+        return v;
+    }
+
+    /**
+     * Returns an id of this run of the service, which tells apart versions of different runs.
+     *
+     * @return startup id
+     */
+    public String getBootId() {
+        return bootId;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the time of the last change, to the second, as it can be sent now. While the
+     * second of the last change is not over, another change may follow within that second,
+     * so the second before is returned: a copy served now must look older than such a change.
+     *
+     * @return last modification date
+     */
+    public Date getLastModified() {
+        final long modified = lastModified;
+        return new Date(modified < truncate(System.currentTimeMillis()) ? modified : modified - 1000);
+    }
+
+    /**
+     * Tells whether the data changed in the current second, when <tt>If-Modified-Since</tt>
+     * cannot tell a copy of the same second apart from the current data.
+     *
+     * @return true if the last change is less than a second old
+     */
+    public boolean isChangedThisSecond() {
+        return lastModified >= truncate(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns a weak entity tag for the current version, as the same version is served
+     * in several representations.
+     *
+     * @return entity tag
+     */
+    public EntityTag getEntityTag() {
+        return new EntityTag(bootId + "-" + version.get(), true);
+    }
+}
@@ -0,0 +1,67 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.core.Response;
+import java.util.Date;
+
+/**
+ * Keyset pagination position within the shift history.
+ * The history is ordered by start date and id, both descending; a cursor
+ * names the last row of a page and the next page starts right after it.
+ * Its external form is <tt>&lt;startDate in ms&gt;,&lt;id&gt;</tt>.
+ *
+ */
+public class ShiftCursor {
+
+    private final Date startDate;
+    private final Integer id;
+
+    public ShiftCursor(final Date startDate, final Integer id) {
+        this.startDate = startDate;
+        this.id = id;
+    }
+
+    /**
+     * Creates the cursor pointing right after <tt>shift</tt>.
+     *
+     * @param shift last shift of a page
+     * @return cursor for the following page
+     */
+    public static ShiftCursor after(final Shift shift) {
+        return new ShiftCursor(shift.getStartDate(), shift.getId());
+    }
+
+    /**
+     * Parses the external form of a cursor, as sent in the <tt>after</tt> query parameter.
+     *
+     * @param token cursor token
+     * @return parsed cursor
+     * @throws ShiftFinderException if the token is malformed
+     */
+    public static ShiftCursor parse(final String token) throws ShiftFinderException {
+        final int separator = token == null ? -1 : token.indexOf(',');
+        if (separator < 0) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "Invalid page cursor '" + token + "', expected <startDate>,<id>");
+        }
+        try {
+            return new ShiftCursor(new Date(Long.parseLong(token.substring(0, separator).trim())),
+                    Integer.valueOf(token.substring(separator + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "Invalid page cursor '" + token + "', expected <startDate>,<id>", e);
+        }
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return startDate.getTime() + "," + id;
+    }
+}
@@ -0,0 +1,197 @@
+package gov.bnl.shift;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.glassfish.jersey.media.sse.SseBroadcaster;
+
+import javax.naming.InitialContext;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server-sent events of the shift lifecycle (<tt>start</tt>, <tt>end</tt> and <tt>close</tt>,
+ * with the shift as JSON payload), published by {@link ShiftManager} after the change is committed.
+ * Event ids are the {@link ShiftChanges} versions, prefixed with the startup time of the instance.
+ * The latest events are kept in a bounded buffer, so a client reconnecting with <tt>Last-Event-ID</tt>
+ * gets the events it missed; if they are no longer buffered, or the id is from an earlier run
+ * of the service, it gets a <tt>reset</tt> event and should reload the shifts.
+ * Events are written by a single background thread, in publishing order, which also sends
+ * a comment every 30 seconds so idle connections are kept open and dead ones detected.
+ *
+ */
+public class ShiftEvents {
+
+    private static final Logger log = Logger.getLogger(ShiftEvents.class.getName());
+
+    private static final int defaultBufferSize = 1000;
+    private static final long heartbeatInterval = 30;
+
+    private static ShiftEvents instance = new ShiftEvents(lookupBufferSize());
+
+    private final int bufferSize;
+    private final ArrayDeque<Entry> buffer = new ArrayDeque<Entry>();
+    private long evicted = 0;
+    private final SseBroadcaster broadcaster = new SseBroadcaster();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "shift-events");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private ShiftEvents(final int bufferSize) {
+        this.bufferSize = bufferSize;
+        writer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                broadcaster.broadcast(new OutboundEvent.Builder().comment("heartbeat").build());
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.SECONDS);
+    }
+
+    private static int lookupBufferSize() {
+        int size = defaultBufferSize;
+        try {
+            size = Integer.parseInt(new InitialContext().lookup("shift/eventBufferSize").toString().trim());
+            log.log(Level.CONFIG, "Found shift/eventBufferSize: {0}", size);
+        } catch (Exception ex) {
+            log.log(Level.CONFIG, "Using default shift/eventBufferSize: {0}", size);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the (singleton) instance of ShiftEvents
+     *
+     * @return the instance of ShiftEvents
+     */
+    public static ShiftEvents getInstance() {
+        return instance;
+    }
+
+    private static String eventId(final long version) {
+        return ShiftChanges.getInstance().getBootId() + "-" + version;
+    }
+
+    /**
+     * Records a change of a shift and sends it to all subscribers.
+     *
+     * @param name event name: start, end or close
+     * @param shift the shift after the change
+     */
+    public void publish(final String name, final Shift shift) {
+        synchronized (buffer) {
+            final long version = ShiftChanges.getInstance().changed();
+            final OutboundEvent event = new OutboundEvent.Builder()
+                    .name(name)
+                    .id(eventId(version))
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(Shift.class, shift)
+                    .build();
+            buffer.addLast(new Entry(version, event));
+            while (buffer.size() > bufferSize) {
+                evicted = buffer.removeFirst().version;
+            }
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    broadcaster.broadcast(event);
+                }
+            });
+        }
+    }
+
+    /**
+     * Opens an event stream, first replaying the buffered events after <tt>lastEventId</tt>.
+     *
+     * @param lastEventId id of the last event the client received, or null for a new client
+     * @return the event stream
+     */
+    public EventOutput subscribe(final String lastEventId) {
+        final EventOutput output = new EventOutput();
+        final List<OutboundEvent> replay = new ArrayList<OutboundEvent>();
+        final boolean reset;
+        synchronized (buffer) {
+            final long last = parseVersion(lastEventId);
+            reset = lastEventId != null && (last < evicted || last > ShiftChanges.getInstance().getVersion());
+            if (lastEventId != null && !reset) {
+                for (Entry entry : buffer) {
+                    if (entry.version > last) {
+                        replay.add(entry.event);
+                    }
+                }
+            }
+            // queued behind the broadcasts of the buffered events, ahead of those of later ones
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (reset) {
+                            output.write(new OutboundEvent.Builder().name("reset")
+                                    .id(eventId(ShiftChanges.getInstance().getVersion()))
+                                    .data(String.class, "reset").build());
+                        }
+                        for (OutboundEvent event : replay) {
+                            output.write(event);
+                        }
+                        broadcaster.add(output);
+                    } catch (IOException e) {
+                        log.log(Level.FINE, "Event subscriber gone during replay", e);
+                        try {
+                            output.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+        }
+        return output;
+    }
+
+    /**
+     * Returns the version of an event id of this run of the service, -1 if it is not one.
+     */
+    private static long parseVersion(final String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        final String prefix = ShiftChanges.getInstance().getBootId() + "-";
+        if (!lastEventId.trim().startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim().substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Closes all event streams and stops the writer thread.
+     */
+    public void shutdown() {
+        writer.shutdownNow();
+        broadcaster.closeAll();
+    }
+
+    private static class Entry {
+        private final long version;
+        private final OutboundEvent event;
+
+        private Entry(final long version, final OutboundEvent event) {
+            this.version = version;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package gov.bnl.shift;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import javax.naming.InitialContext;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the shifts matching a {@link ShiftQuery} as NDJSON (one JSON object per line,
+ * dates in milliseconds since the epoch) or CSV (RFC 4180, ISO 8601 UTC dates),
+ * newest first. Rows are read through a forward-only JDBC cursor and written as they
+ * arrive, so memory use does not depend on the number of shifts exported.
+ * Without <tt>limit</tt> all matching shifts are exported.
+ *
+ */
+public class ShiftExport implements StreamingOutput {
+
+    private static final Logger log = Logger.getLogger(ShiftExport.class.getName());
+
+    public enum Format {
+        NDJSON("application/x-ndjson"), CSV("text/csv");
+
+        private final String mediaType;
+
+        Format(final String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Returns the format with the given name (case insensitive), NDJSON if none is given.
+         *
+         * @param name format name
+         * @return format
+         * @throws ShiftFinderException BAD_REQUEST on an unknown format
+         */
+        public static Format parse(final String name) throws ShiftFinderException {
+            if (name == null || name.isEmpty()) {
+                return NDJSON;
+            }
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST, "Unknown export format '" + name + "'");
+        }
+    }
+
+    private static final int defaultFetchSize = 1000;
+    private static final int fetchSize;
+
+    static {
+        int newFetchSize = defaultFetchSize;
+        try {
+            newFetchSize = Integer.parseInt(new InitialContext().lookup("shift/exportFetchSize").toString().trim());
+            log.log(Level.CONFIG, "Found shift/exportFetchSize: {0}", newFetchSize);
+        } catch (Exception ex) {
+            log.log(Level.CONFIG, "Using default shift/exportFetchSize: {0}", newFetchSize);
+        }
+        fetchSize = newFetchSize;
+    }
+
+    private static final String[] columns = {"id", "type", "owner", "startDate", "endDate", "description",
+            "leadOperator", "onShiftPersonal", "report", "closeShiftUser", "status"};
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final ShiftQuery query;
+    private final Format format;
+
+    public ShiftExport(final ShiftQuery query, final Format format) {
+        this.query = query;
+        this.format = format;
+    }
+
+    /**
+     * Builds the export statement: the shifts joined with their type, filtered by the query,
+     * newest first.
+     *
+     * @param query the shift query
+     * @param params receives the parameter values, in placeholder order
+     * @return SQL statement
+     */
+    static String toSql(final ShiftQuery query, final List<Object> params) {
+        return toSql(query, params, false);
+    }
+
+    /**
+     * Builds the export statement, searching through the FULLTEXT index with <tt>fullText</tt>;
+     * search results are ordered by relevance first.
+     *
+     * @param query the shift query
+     * @param params receives the parameter values, in placeholder order
+     * @param fullText whether the database has the FULLTEXT index
+     * @return SQL statement
+     */
+    static String toSql(final ShiftQuery query, final List<Object> params, final boolean fullText) {
+        final StringBuilder sql = new StringBuilder("SELECT s.id, t.name, s.owner, s.start_date, s.end_date,"
+                + " s.description, s.lead_operator, s.on_shift_personal, s.report, s.close_shift_user"
+                + " FROM shift s JOIN type t ON t.id = s.type_id");
+        sql.append(query.toSqlWhere(params, fullText));
+        sql.append(query.toSqlOrderBy(params, fullText));
+        if (query.hasLimit()) {
+            sql.append(" LIMIT ").append(query.getLimit());
+            if (query.getOffset() > 0) {
+                sql.append(" OFFSET ").append(query.getOffset());
+            }
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException {
+        final List<Object> params = new ArrayList<Object>();
+        final DbConnection db = DbConnection.getInstance();
+        final long start = System.nanoTime();
+        long rows = 0;
+        try {
+            db.beginReadOnlyTransaction();
+            final boolean fullText = "MySQL".equals(db.getConnection().getMetaData().getDatabaseProductName());
+            final PreparedStatement ps = db.getConnection().prepareStatement(toSql(query, params, fullText),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                ps.setFetchSize(fetchSize);
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
+                }
+                final ResultSet rs = ps.executeQuery();
+                try {
+                    rows = format == Format.CSV ? writeCsv(rs, output) : writeNdjson(rs, output);
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+            db.commit();
+            log.fine("exported " + rows + " shifts as " + format);
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Export failed after " + rows + " shifts", e);
+            throw new WebApplicationException(e);
+        } catch (ShiftFinderException e) {
+            log.log(Level.WARNING, "Export failed", e);
+            throw new WebApplicationException(e, e.toResponse());
+        } finally {
+            db.releaseConnection();
+            ShiftMetrics.getInstance().queried("export", start);
+        }
+    }
+
+    private static long writeNdjson(final ResultSet rs, final OutputStream output) throws SQLException, IOException {
+        final JsonGenerator json = jsonFactory.createGenerator(output);
+        json.setRootValueSeparator(null);
+        long rows = 0;
+        while (rs.next()) {
+            final Timestamp endDate = rs.getTimestamp(5);
+            final String closeShiftUser = rs.getString(10);
+            json.writeStartObject();
+            json.writeNumberField(columns[0], rs.getInt(1));
+            json.writeStringField(columns[1], rs.getString(2));
+            json.writeStringField(columns[2], rs.getString(3));
+            json.writeNumberField(columns[3], rs.getTimestamp(4).getTime());
+            if (endDate != null) {
+                json.writeNumberField(columns[4], endDate.getTime());
+            }
+            writeOptional(json, columns[5], rs.getString(6));
+            writeOptional(json, columns[6], rs.getString(7));
+            writeOptional(json, columns[7], rs.getString(8));
+            writeOptional(json, columns[8], rs.getString(9));
+            writeOptional(json, columns[9], closeShiftUser);
+            json.writeStringField(columns[10], status(endDate, closeShiftUser));
+            json.writeEndObject();
+            json.writeRaw('\n');
+            rows++;
+        }
+        json.flush();
+        return rows;
+    }
+
+    private static void writeOptional(final JsonGenerator json, final String name, final String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(name, value);
+        }
+    }
+
+    private static long writeCsv(final ResultSet rs, final OutputStream output) throws SQLException, IOException {
+        final Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        final SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(columns[i]);
+        }
+        out.write("\r\n");
+        long rows = 0;
+        while (rs.next()) {
+            final Timestamp startDate = rs.getTimestamp(4);
+            final Timestamp endDate = rs.getTimestamp(5);
+            final String closeShiftUser = rs.getString(10);
+            out.write(Integer.toString(rs.getInt(1)));
+            writeCsvField(out, rs.getString(2));
+            writeCsvField(out, rs.getString(3));
+            writeCsvField(out, iso.format(startDate));
+            writeCsvField(out, endDate != null ? iso.format(endDate) : null);
+            for (int column = 6; column <= 10; column++) {
+                writeCsvField(out, rs.getString(column));
+            }
+            writeCsvField(out, status(endDate, closeShiftUser));
+            out.write("\r\n");
+            rows++;
+        }
+        out.flush();
+        return rows;
+    }
+
+    /**
+     * Writes a separator and the field, quoted if it contains a separator, quote or line break.
+     */
+    static void writeCsvField(final Writer out, final String value) throws IOException {
+        out.write(',');
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static String status(final Timestamp endDate, final String closeShiftUser) {
+        if (endDate == null) {
+            return "Active";
+        }
+        return closeShiftUser == null ? "End" : "Signed";
+    }
+}
@@ -0,0 +1,346 @@
+package gov.bnl.shift;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.naming.InitialContext;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports historical shifts, read as they arrive from NDJSON (one shift per line, in the format
+ * of {@link ShiftExport}) or XML (a <tt>shifts</tt> list as returned by <tt>GET /shift</tt>).
+ * Only complete shifts are imported: type, owner, start and end date are required, the type must
+ * exist; ids are assigned by the database. Valid shifts are inserted in JDBC batches of
+ * <tt>shift/importBatchSize</tt> rows, each committed on its own, so an interrupted import keeps
+ * the batches written so far. Invalid rows are reported and skipped.
+ *
+ */
+public class ShiftImport {
+
+    private static final Logger log = Logger.getLogger(ShiftImport.class.getName());
+
+    /**
+     * Number of row errors listed in the result; further errors are only counted.
+     */
+    public static final int MAX_ERRORS = 1000;
+
+    public enum Format {
+        NDJSON("application/x-ndjson"), XML("application/xml");
+
+        private final String mediaType;
+
+        Format(final String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+    }
+
+    private static final int defaultBatchSize = 1000;
+    private static final int batchSize;
+
+    static {
+        int newBatchSize = defaultBatchSize;
+        try {
+            newBatchSize = Integer.parseInt(new InitialContext().lookup("shift/importBatchSize").toString().trim());
+            log.log(Level.CONFIG, "Found shift/importBatchSize: {0}", newBatchSize);
+        } catch (Exception ex) {
+            log.log(Level.CONFIG, "Using default shift/importBatchSize: {0}", newBatchSize);
+        }
+        batchSize = newBatchSize;
+    }
+
+    // length of the varchar user columns
+    private static final int maxNameLength = 250;
+
+    private static final String insertSql = "INSERT INTO shift (owner, description, lead_operator,"
+            + " on_shift_personal, report, type_id, close_shift_user, start_date, end_date)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final Format format;
+    private final ShiftImportResult result = new ShiftImportResult();
+    // valid shifts not yet written, and their row numbers
+    private final List<Shift> batch = new ArrayList<Shift>();
+    private final List<Long> batchRows = new ArrayList<Long>();
+    private DbConnection db = null;
+    private PreparedStatement ps = null;
+
+    public ShiftImport(final Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Reads and imports the shifts of <tt>input</tt>. Reading stops at the first malformed
+     * XML document or unreadable input, which is reported as an error of the next row.
+     *
+     * @param input request body
+     * @return numbers of rows read, imported and rejected, with the row errors
+     * @throws ShiftFinderException wrapping an SQLException
+     */
+    public ShiftImportResult run(final InputStream input) throws ShiftFinderException {
+        db = DbConnection.getInstance();
+        final long start = System.nanoTime();
+        try {
+            db.beginTransaction();
+            ps = db.getConnection().prepareStatement(insertSql);
+            try {
+                if (format == Format.NDJSON) {
+                    readNdjson(input);
+                } else {
+                    readXml(input);
+                }
+            } catch (IOException | XMLStreamException | JAXBException e) {
+                log.log(Level.WARNING, "Import input unreadable after " + result.getRows() + " rows", e);
+                result.failed(result.getRows() + 1, "Unreadable input: " + e.getMessage());
+            }
+            try {
+                flush();
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
+                    "SQL Exception while importing shifts", e);
+        } finally {
+            db.releaseConnection();
+            ShiftMetrics.getInstance().queried("importShifts", start);
+            // batches are committed on their own, so some may be written even if a later one failed
+            if (result.getImported() > 0) {
+                ShiftChanges.getInstance().changed();
+            }
+        }
+        log.info("imported " + result.getImported() + " of " + result.getRows() + " shifts, "
+                + result.getFailed() + " failed");
+        return result;
+    }
+
+    private void readNdjson(final InputStream input) throws IOException, SQLException, ShiftFinderException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            final long row = result.getRows() + 1;
+            result.setRows(row);
+            try {
+                add(row, parseJson(line));
+            } catch (JsonParseException e) {
+                result.failed(row, "Malformed JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    /**
+     * Parses one NDJSON line; <tt>id</tt>, <tt>status</tt> and unknown fields are ignored.
+     * The type is given by name, or as an object with a name; dates are in milliseconds.
+     */
+    static Shift parseJson(final String line) throws IOException {
+        final JsonParser json = jsonFactory.createParser(line);
+        try {
+            if (json.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected an object", json.getCurrentLocation());
+            }
+            final Shift shift = new Shift();
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = json.getCurrentName();
+                final JsonToken value = json.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                if (field.equals("type")) {
+                    final Type type = new Type();
+                    if (value == JsonToken.START_OBJECT) {
+                        while (json.nextToken() == JsonToken.FIELD_NAME) {
+                            final String typeField = json.getCurrentName();
+                            json.nextToken();
+                            if (typeField.equals("name")) {
+                                type.setName(json.getValueAsString());
+                            } else {
+                                json.skipChildren();
+                            }
+                        }
+                    } else {
+                        type.setName(json.getValueAsString());
+                    }
+                    shift.setType(type);
+                } else if (field.equals("startDate") || field.equals("endDate")) {
+                    if (value != JsonToken.VALUE_NUMBER_INT) {
+                        throw new JsonParseException(field + " must be in milliseconds since the epoch",
+                                json.getCurrentLocation());
+                    }
+                    if (field.equals("startDate")) {
+                        shift.setStartDate(new Date(json.getLongValue()));
+                    } else {
+                        shift.setEndDate(new Date(json.getLongValue()));
+                    }
+                } else if (field.equals("owner")) {
+                    shift.setOwner(json.getValueAsString());
+                } else if (field.equals("description")) {
+                    shift.setDescription(json.getValueAsString());
+                } else if (field.equals("leadOperator")) {
+                    shift.setLeadOperator(json.getValueAsString());
+                } else if (field.equals("onShiftPersonal")) {
+                    shift.setOnShiftPersonal(json.getValueAsString());
+                } else if (field.equals("report")) {
+                    shift.setReport(json.getValueAsString());
+                } else if (field.equals("closeShiftUser")) {
+                    shift.setCloseShiftUser(json.getValueAsString());
+                } else {
+                    json.skipChildren();
+                }
+            }
+            return shift;
+        } finally {
+            json.close();
+        }
+    }
+
+    private void readXml(final InputStream input)
+            throws XMLStreamException, JAXBException, SQLException, ShiftFinderException {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        final XMLStreamReader xml = factory.createXMLStreamReader(input);
+        final Unmarshaller unmarshaller = JAXBContext.newInstance(Shift.class).createUnmarshaller();
+        try {
+            // the shifts element, then its children
+            xml.nextTag();
+            xml.nextTag();
+            while (xml.isStartElement()) {
+                final long row = result.getRows() + 1;
+                result.setRows(row);
+                add(row, unmarshaller.unmarshal(xml, Shift.class).getValue());
+                while (xml.hasNext() && !xml.isStartElement() && !xml.isEndElement()) {
+                    xml.next();
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    /**
+     * Returns why a shift cannot be imported, or null if it is complete.
+     */
+    static String validate(final Shift shift) {
+        if (shift.getType() == null || shift.getType().getName() == null) {
+            return "The type is missing";
+        }
+        if (TypeRegistry.getInstance().findByName(shift.getType().getName()) == null) {
+            return "The shift type '" + shift.getType().getName() + "' does not exist";
+        }
+        if (shift.getOwner() == null || shift.getOwner().isEmpty()) {
+            return "The owner is missing";
+        }
+        if (shift.getStartDate() == null || shift.getEndDate() == null) {
+            return "Only complete shifts with a start and end date can be imported";
+        }
+        if (shift.getEndDate().before(shift.getStartDate())) {
+            return "The shift ends before it starts";
+        }
+        if (shift.getOwner().length() > maxNameLength
+                || (shift.getLeadOperator() != null && shift.getLeadOperator().length() > maxNameLength)
+                || (shift.getOnShiftPersonal() != null && shift.getOnShiftPersonal().length() > maxNameLength)
+                || (shift.getCloseShiftUser() != null && shift.getCloseShiftUser().length() > maxNameLength)) {
+            return "User names are limited to " + maxNameLength + " characters";
+        }
+        return null;
+    }
+
+    private void add(final long row, final Shift shift) throws SQLException, ShiftFinderException {
+        final String error = validate(shift);
+        if (error != null) {
+            result.failed(row, error);
+            return;
+        }
+        // widened before the insert, so that the shift is never outside the overlap bound
+        ShiftLengths.getInstance().ended(shift);
+        bind(shift);
+        ps.addBatch();
+        batch.add(shift);
+        batchRows.add(row);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void bind(final Shift shift) throws SQLException {
+        ps.setString(1, shift.getOwner());
+        setString(2, shift.getDescription());
+        setString(3, shift.getLeadOperator());
+        setString(4, shift.getOnShiftPersonal());
+        setString(5, shift.getReport());
+        ps.setInt(6, TypeRegistry.getInstance().findByName(shift.getType().getName()).getId());
+        setString(7, shift.getCloseShiftUser());
+        ps.setTimestamp(8, new Timestamp(shift.getStartDate().getTime()));
+        ps.setTimestamp(9, new Timestamp(shift.getEndDate().getTime()));
+    }
+
+    private void setString(final int index, final String value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    /**
+     * Writes and commits the current batch. If the batch fails, its rows are inserted one by one
+     * to find the failing ones.
+     */
+    private void flush() throws SQLException, ShiftFinderException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            ps.executeBatch();
+            db.commit();
+            result.setImported(result.getImported() + batch.size());
+        } catch (SQLException e) {
+            log.log(Level.FINE, "Import batch failed, retrying row by row", e);
+            ps.clearBatch();
+            db.rollback();
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    bind(batch.get(i));
+                    ps.executeUpdate();
+                    result.setImported(result.getImported() + 1);
+                } catch (SQLException rowException) {
+                    result.failed(batchRows.get(i), "Not imported: " + rowException.getMessage());
+                }
+            }
+            db.commit();
+        }
+        batch.clear();
+        batchRows.clear();
+        log.info("import: " + result.getRows() + " rows read, " + result.getImported() + " imported, "
+                + result.getFailed() + " failed");
+    }
+}
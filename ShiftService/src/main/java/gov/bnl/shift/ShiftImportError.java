@@ -0,0 +1,46 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A row of a <tt>POST /shift/import</tt> request that was not imported, and why.
+ *
+ */
+@XmlRootElement(name = "error")
+public class ShiftImportError {
+
+    private long row;
+    private String message = null;
+
+    public ShiftImportError() {
+    }
+
+    public ShiftImportError(final long row, final String message) {
+        this.row = row;
+        this.message = message;
+    }
+
+    /**
+     * Getter for the position of the shift in the request, from 1.
+     *
+     * @return row number
+     */
+    @XmlAttribute
+    public long getRow() {
+        return row;
+    }
+
+    public void setRow(final long row) {
+        this.row = row;
+    }
+
+    @XmlAttribute
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(final String message) {
+        this.message = message;
+    }
+}
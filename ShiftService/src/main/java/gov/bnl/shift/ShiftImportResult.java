@@ -0,0 +1,78 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Response of a <tt>POST /shift/import</tt> request: the number of rows read, imported and
+ * rejected, and the errors of the rejected rows (the first {@link ShiftImport#MAX_ERRORS} of them).
+ *
+ */
+@XmlRootElement(name = "import")
+public class ShiftImportResult extends LinkedList<ShiftImportError> {
+
+    private long rows = 0;
+    private long imported = 0;
+    private long failed = 0;
+
+    public ShiftImportResult() {
+    }
+
+    @XmlElementRef(type = ShiftImportError.class, name = "error")
+    public List<ShiftImportError> getErrorList() {
+        return this;
+    }
+
+    @XmlTransient
+    public List<ShiftImportError> getErrors() {
+        return this;
+    }
+
+    public void setErrors(List<ShiftImportError> errors) {
+        this.addAll(errors);
+    }
+
+    @XmlAttribute
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(final long rows) {
+        this.rows = rows;
+    }
+
+    @XmlAttribute
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(final long imported) {
+        this.imported = imported;
+    }
+
+    @XmlAttribute
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(final long failed) {
+        this.failed = failed;
+    }
+
+    /**
+     * Records a rejected row.
+     *
+     * @param row row number, from 1
+     * @param message reason
+     */
+    public void failed(final long row, final String message) {
+        failed++;
+        if (size() < ShiftImport.MAX_ERRORS) {
+            add(new ShiftImportError(row, message));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package gov.bnl.shift;
+
+import javax.naming.InitialContext;
+import javax.ws.rs.core.Response;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounds the start date of the shifts overlapping a time, so that <tt>at</tt> and <tt>overlaps</tt>
+ * of {@link ShiftQuery} are a narrow range scan of the start date index instead of a scan of the
+ * whole history: an ended shift overlapping <tt>from</tt> started at most the longest shift length
+ * before it, an open shift no earlier than the oldest open shift.
+ * The oldest open shift is looked up in the database on every use. The longest length of the
+ * ended shifts is read from the database at startup and raised by the shifts ended or imported
+ * through this service instance; <tt>shift/maxShiftLength</tt> (seconds) sets a minimum for
+ * databases written by other instances or by hand.
+ *
+ */
+public class ShiftLengths {
+
+    private static final Logger log = Logger.getLogger(ShiftLengths.class.getName());
+
+    private static final long configuredMaxLength;
+
+    static {
+        long newMaxLength = 0;
+        try {
+            newMaxLength = Long.parseLong(new InitialContext().lookup("shift/maxShiftLength").toString().trim()) * 1000;
+            log.log(Level.CONFIG, "Found shift/maxShiftLength: {0}", newMaxLength / 1000);
+        } catch (Exception ex) {
+            log.log(Level.CONFIG, "Using default shift/maxShiftLength: {0}", newMaxLength);
+        }
+        configuredMaxLength = newMaxLength;
+    }
+
+    private static final String maxLengthSql = "SELECT MAX(TIMESTAMPDIFF(SECOND, start_date, end_date))"
+            + " FROM shift WHERE end_date IS NOT NULL";
+    // idx_shift_end_start: the first entry of the open shifts
+    private static final String oldestOpenSql = "SELECT MIN(start_date) FROM shift WHERE end_date IS NULL";
+
+    private static ShiftLengths instance = new ShiftLengths();
+
+    // longest ended shift in ms, -1 until loaded
+    private volatile long maxLength = -1;
+
+    private ShiftLengths() {
+    }
+
+    /**
+     * Returns the (singleton) instance of ShiftLengths
+     *
+     * @return the instance of ShiftLengths
+     */
+    public static ShiftLengths getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reloads the length of the longest ended shift from the database.
+     *
+     * @throws ShiftFinderException wrapping an SQLException
+     */
+    public synchronized void rebuild() throws ShiftFinderException {
+        final long seconds = queryLong(maxLengthSql, "rebuildShiftLengths");
+        maxLength = seconds * 1000;
+        log.fine("longest shift: " + seconds + " s");
+    }
+
+    /**
+     * Records an ended (or imported) shift, raising the longest length if needed.
+     *
+     * @param shift shift with its start and end date set
+     */
+    public synchronized void ended(final Shift shift) {
+        if (maxLength < 0 || shift.getStartDate() == null || shift.getEndDate() == null) {
+            return;
+        }
+        maxLength = Math.max(maxLength, shift.getEndDate().getTime() - shift.getStartDate().getTime());
+    }
+
+    /**
+     * Returns the earliest start date of a shift running at or after <tt>from</tt>.
+     *
+     * @param from start of the overlap range
+     * @return lower bound of the start dates
+     * @throws ShiftFinderException wrapping an SQLException
+     */
+    public Date earliestStart(final Date from) throws ShiftFinderException {
+        if (maxLength < 0) {
+            synchronized (this) {
+                if (maxLength < 0) {
+                    rebuild();
+                }
+            }
+        }
+        final long earliest = from.getTime() - Math.max(maxLength, configuredMaxLength);
+        final long oldestOpen = queryLong(oldestOpenSql, "oldestOpenShift");
+        return new Date(oldestOpen > 0 ? Math.min(earliest, oldestOpen) : earliest);
+    }
+
+    /**
+     * Runs a single value query: a number of seconds or a date, in ms. Returns 0 without a value.
+     */
+    private static long queryLong(final String sql, final String metric) throws ShiftFinderException {
+        final DbConnection db = DbConnection.getInstance();
+        final long start = System.nanoTime();
+        try {
+            db.beginReadOnlyTransaction();
+            final PreparedStatement ps = db.getConnection().prepareStatement(sql);
+            long value = 0;
+            try {
+                final ResultSet rs = ps.executeQuery();
+                try {
+                    if (rs.next() && rs.getObject(1) != null) {
+                        final Object o = rs.getObject(1);
+                        value = o instanceof Number ? ((Number) o).longValue() : rs.getTimestamp(1).getTime();
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+            db.commit();
+            return value;
+        } catch (SQLException e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
+                    "SQL Exception while bounding the shift lengths", e);
+        } finally {
+            db.releaseConnection();
+            ShiftMetrics.getInstance().queried(metric, start);
+        }
+    }
+}
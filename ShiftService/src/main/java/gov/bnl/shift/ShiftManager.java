@@ -1,20 +1,17 @@
 package gov.bnl.shift;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import org.eclipse.persistence.sessions.Session;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Join;
-import javax.persistence.criteria.JoinType;
-import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import java.util.*;
-import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static gov.bnl.shift.ShiftResource.log;
@@ -24,8 +21,6 @@ import static gov.bnl.shift.ShiftResource.log;
  */
 public class ShiftManager {
 
-    private static EntityManager em = null;
-
     private static ShiftManager instance = new ShiftManager();
 
     /**
@@ -52,38 +47,30 @@ public class ShiftManager {
      * @throws ShiftFinderException on SQLException
      */
     public Shift findShiftById(final Integer shiftId) throws ShiftFinderException {
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
-        final CriteriaQuery<Shift> cq = cb.createQuery(Shift.class);
-        final Root<Shift> from = cq.from(Shift.class);
-        final CriteriaQuery<Shift> select = cq.select(from);
-        final Predicate idPredicate = cb.equal(from.get("id"), shiftId);
-        select.where(cb.and(idPredicate));
-        cq.orderBy(cb.desc(from.get(Shift_.startDate)));
-        final TypedQuery<Shift> typedQuery = em.createQuery(select);
-        JPAUtil.startTransaction(em);
+        if (shiftId == null) {
+            return null;
+        }
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
         try {
-            Shift result = null;
-            final List<Shift> rs = typedQuery.getResultList();
-            if (rs != null) {
-                Iterator<Shift> iterator = rs.iterator();
-                while (iterator.hasNext()) {
-                    result = iterator.next();
-                }
-            }
-
-            return result;
+            return em.find(Shift.class, shiftId);
         } catch (Exception e) {
             throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
                     "JPA exception: " + e);
         } finally {
-            JPAUtil.finishTransacton(em);
+            em.close();
+            ShiftMetrics.getInstance().queried("findShiftById", start);
         }
     }
 
 
     /**
      * Returns multiple shifts found by matching ids, start dates or owner name.
+     * Results are paginated either by offset (<tt>page</tt>/<tt>limit</tt>) or by keyset
+     * (<tt>after</tt>/<tt>limit</tt>); outside the offset mode a full page carries the cursor
+     * of the following one.
+     * With <tt>fields</tt> only the selected columns are loaded, and the other properties
+     * of the returned shifts are null.
      *
      * @param matches multivalued map of patterns to match
      * their values against.
@@ -91,212 +78,164 @@ public class ShiftManager {
      * @throws ShiftFinderException wrapping an SQLException
      */
     public Shifts findShiftsByMultiMatch(final MultivaluedMap<String, String> matches) throws ShiftFinderException {
-        List<Predicate> andPredicates = new ArrayList<Predicate>();
-        List<Predicate> orPredicates = new ArrayList<Predicate>();
-        
-        final List<String> shift_ids = new LinkedList<String>();
-        final List<String> shift_owners = new LinkedList<String>();
-        final List<String> descriptions = new LinkedList<String>();
-        final List<String> leadOperators = new LinkedList<String>();
-        final List<String> onShiftOperators = new LinkedList<String>();
-        final List<Integer> typeIds = new LinkedList<Integer>();
-        final List<String> closeUsers = new LinkedList<String>();
-        final Multimap<String, String> paginate_matches = ArrayListMultimap.create();
-
-        String status = null;
-        String shift_start_date = null;
-        String shift_end_date = null;
-        
-        for (final Map.Entry<String, List<String>> match : matches.entrySet()) {
-            final String key = match.getKey().toLowerCase();
-            if (key.equalsIgnoreCase("id")) {
-                shift_ids.addAll(match.getValue());
-                //Only allow one date to query for from and to, if multiple ones appear on the query only use the first one
-            } else if(key.equalsIgnoreCase("from")) {
-                shift_start_date = match.getValue().iterator().next();
-                //Only allow one date to query for from and to, if multiple ones appear on the query only use the first one
-            } else if (key.equalsIgnoreCase("to")) {
-                shift_end_date = match.getValue().iterator().next();
-            } else if (key.equalsIgnoreCase("owner")) {
-                shift_owners.addAll(match.getValue());
-            } else if (key.equalsIgnoreCase("description")) {
-                descriptions.addAll(match.getValue());
-            } else if (key.equalsIgnoreCase("type")) {
-                typeIds.addAll(findTypesIdByName(match.getValue().toArray(new String[match.getValue().size()])));
-            } else if (key.equalsIgnoreCase("leadoperator")) {
-                leadOperators.addAll(match.getValue());
-            } else if (key.equalsIgnoreCase("onshiftpersonal")) {
-                onShiftOperators.addAll(match.getValue());
-            } else if (key.equals("page")) {
-                paginate_matches.putAll(key, match.getValue());
-            } else if (key.equals("limit")) {
-                paginate_matches.putAll(key, match.getValue());
-            } else if (key.equalsIgnoreCase("closeuser")) {
-                closeUsers.addAll(match.getValue());
-            } else if (key.equalsIgnoreCase("status")) {
-                status = match.getValue().iterator().next();
-            }
+        if(matches.isEmpty()) {
+            return new Shifts();
         }
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
-        em.getTransaction().begin();
+        final ShiftQuery query = ShiftQuery.parse(matches);
 
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
-        final CriteriaQuery<Shift> cq = cb.createQuery(Shift.class);
-        final Root<Shift> from = cq.from(Shift.class);
-        Join<Shift, Type> type = from.join(Shift_.type, JoinType.LEFT);
-        Predicate idPredicate = cb.disjunction();
-        if (!shift_ids.isEmpty()) {
-            idPredicate = cb.or(from.get(Shift_.id).in(shift_ids), idPredicate);
-            andPredicates.add(idPredicate);
-        }
-        if(!shift_owners.isEmpty()) {
-            Predicate ownerPredicate = cb.disjunction();
-            for (String s : shift_owners) {
-                ownerPredicate = cb.or(cb.equal(from.get(Shift_.owner), s), ownerPredicate);
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
+        try {
+            final List<Shift> rs;
+            if (query.getSearch() != null) {
+                rs = search(em, query);
+            } else {
+                // the statement only depends on the shape of the query, so EclipseLink parses it
+                // once and takes it from its JPQL parse cache afterwards
+                final Map<String, Object> params = new HashMap<String, Object>();
+                final String jpql = query.toJpql(params);
+                if (query.getFields() == null) {
+                    rs = page(bind(em.createQuery(jpql, Shift.class), params), query).getResultList();
+                } else {
+                    final List<String> fields = new ArrayList<String>(query.getFields());
+                    rs = new ArrayList<Shift>();
+                    for (Object row : page(bind(em.createQuery(jpql), params), query).getResultList()) {
+                        final Object[] values = (Object[]) row;
+                        rs.add(project(field -> values[fields.indexOf(field)], query.getFields()));
+                    }
+                }
             }
-            andPredicates.add(ownerPredicate);
-        }
-        if(!descriptions.isEmpty()) {
-            Predicate searchPredicate = cb.disjunction();
-            for (String s : descriptions) {
-                searchPredicate = cb.or(cb.like(from.get(Shift_.description), "%"+s+"%"), searchPredicate);
+            final Shifts result = new Shifts(rs);
+            if (query.getSearch() == null && !query.isOffsetPaged() && !result.isEmpty()
+                    && result.size() == query.getLimit()) {
+                result.setNext(ShiftCursor.after(result.getLast()));
             }
-            andPredicates.add(searchPredicate);
-        }
-        if(!typeIds.isEmpty()) {
-            Predicate typenPredicate = cb.disjunction();
-            typenPredicate = cb.or(type.get(Type_.id).in(typeIds), typenPredicate);
-            andPredicates.add(typenPredicate);
-        }
-        if(!leadOperators.isEmpty()) {
-            Predicate leadPredicate = cb.disjunction();
-            leadPredicate = cb.or(from.get(Shift_.leadOperator).in(leadOperators), leadPredicate);
-            andPredicates.add(leadPredicate);
-        }
-        if(!onShiftOperators.isEmpty()) {
-            Predicate onShiftPersonalPredicate = cb.disjunction();
-            onShiftPersonalPredicate = cb.or(from.get(Shift_.onShiftPersonal).in(onShiftOperators), onShiftPersonalPredicate);
-            andPredicates.add(onShiftPersonalPredicate);
+            log.info("matches criteria " + matches.entrySet().stream().map(e -> {
+                return e.getKey()+":"+String.join("", e.getValue());
+            }).collect(Collectors.joining()) + "  result: " + result.size());
+            return result;
+        } catch (ShiftFinderException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
+                    "JPA exception: " + e);
+        } finally {
+            em.close();
+            ShiftMetrics.getInstance().queried("findShiftsByMultiMatch", start);
         }
 
+    }
 
-        Predicate datePredicate = cb.disjunction();
-        if(shift_end_date != null || shift_start_date != null) {
-            if (shift_start_date != null && shift_end_date == null) {
-                final Date jStart = new java.util.Date(Long.valueOf(shift_start_date) * 1000);
-                final Date jEndNow = new java.util.Date(Calendar.getInstance().getTime().getTime());
-                datePredicate = cb.between(from.get(Shift_.startDate),
-                            jStart,
-                            jEndNow);
-            } else if (shift_start_date == null && shift_end_date != null) {
-                final Date jStart1970 = new java.util.Date(0);
-                final Date jEnd = new java.util.Date(Long.valueOf(shift_end_date) * 1000);
-                datePredicate = cb.between(from.get(Shift_.startDate),
-                        jStart1970,
-                        jEnd);
-            } else {
-                final Date jStart = new java.util.Date(Long.valueOf(shift_start_date) * 1000);
-                final Date jEnd = new java.util.Date(Long.valueOf(shift_end_date) * 1000);
-                datePredicate = cb.between(from.get(Shift_.startDate),
-                        jStart,
-                        jEnd);
-            }
-            andPredicates.add(datePredicate);
+    private static <Q extends Query> Q bind(final Q query, final Map<String, Object> params) {
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            query.setParameter(param.getKey(), param.getValue());
         }
-        if(status != null) {
-            Predicate statusPredicate = cb.disjunction();
-            Predicate closeUserPredicate = cb.disjunction();
-            if (status.equalsIgnoreCase("active")) {
-                statusPredicate = cb.or(from.get(Shift_.endDate).isNull(), statusPredicate);
-            } else if (status.equalsIgnoreCase("end")) {
-                statusPredicate = cb.or(from.get(Shift_.endDate).isNotNull(), statusPredicate);
-                closeUserPredicate = cb.or(from.get(Shift_.closeShiftUser).isNull(), closeUserPredicate);
-                andPredicates.add(closeUserPredicate);
-            } else if (status.equalsIgnoreCase("signed")) {
-                statusPredicate = cb.or(from.get(Shift_.endDate).isNotNull(), statusPredicate);
-                closeUserPredicate = cb.or(from.get(Shift_.closeShiftUser).isNotNull(), closeUserPredicate);
-                andPredicates.add(closeUserPredicate);
-            }
-            andPredicates.add(statusPredicate);
+        return query;
+    }
+
+    private static <Q extends Query> Q page(final Q typedQuery, final ShiftQuery query) {
+        if (query.getOffset() > 0) {
+            typedQuery.setFirstResult(query.getOffset());
         }
-        
-        Predicate finalPredicate = cb.conjunction();
+        typedQuery.setMaxResults(query.getLimit());
+        return typedQuery;
+    }
 
-        if (!andPredicates.isEmpty()) {
-            Predicate andfinalPredicate = cb.conjunction();
-            for (Predicate predicate : andPredicates) {
-                andfinalPredicate = cb.and(andfinalPredicate, predicate);
+    /**
+     * Finds the shifts matching the search terms <tt>q</tt> and the other filters of <tt>query</tt>,
+     * most relevant first. On MySQL this is a native query on the FULLTEXT index of description
+     * and report; other databases (the embedded one) fall back to matching every word.
+     * With <tt>fields</tt> only the columns of the selected fields are read.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Shift> search(final EntityManager em, final ShiftQuery query) {
+        final boolean fullText = em.unwrap(Session.class).getPlatform().isMySQL();
+        final List<String> fields = query.getFields() == null ? null : new ArrayList<String>(query.getFields());
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        if (fields == null) {
+            sql.append("s.*");
+        } else {
+            for (int i = 0; i < fields.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append(column(fields.get(i)));
             }
-            finalPredicate = cb.and(finalPredicate, andfinalPredicate);
         }
-        if (!orPredicates.isEmpty()) {
-            Predicate orfinalPredicate = cb.disjunction();
-            for (Predicate predicate : orPredicates) {
-                orfinalPredicate = cb.or(orfinalPredicate, predicate);
-            }
-            finalPredicate = cb.and(finalPredicate, orfinalPredicate);
+        final List<Object> params = new ArrayList<Object>();
+        sql.append(" FROM shift s").append(query.toSqlWhere(params, fullText))
+                .append(query.toSqlOrderBy(params, fullText));
+        final Query q = fields == null
+                ? em.createNativeQuery(sql.toString(), Shift.class) : em.createNativeQuery(sql.toString());
+        for (int i = 0; i < params.size(); i++) {
+            q.setParameter(i + 1, params.get(i));
         }
+        if (fields == null) {
+            return page(q, query).getResultList();
+        }
+        final List<Shift> projected = new ArrayList<Shift>();
+        for (Object row : page(q, query).getResultList()) {
+            final Object[] values = (Object[]) row;
+            projected.add(project(field -> value(field, values[fields.indexOf(field)]), query.getFields()));
+        }
+        return projected;
+    }
 
-        cq.where(finalPredicate);
-        cq.groupBy(from);
-        cq.distinct(true);
-        cq.orderBy(cb.desc(from.get(Shift_.startDate)));
-        final TypedQuery<Shift> typedQuery = em.createQuery(cq);
-        if (!paginate_matches.isEmpty()) {
-            String page = null, limit = null;
-            for (Map.Entry<String, Collection<String>> match : paginate_matches.asMap().entrySet()) {
-                if (match.getKey().toLowerCase().equals("limit")) {
-                    limit = match.getValue().iterator().next();
-                }
-                if (match.getKey().toLowerCase().equals("page")) {
-                    page = match.getValue().iterator().next();
-                }
-            }
-            if (limit != null && page != null) {
-                Integer offset = Integer.valueOf(page) * Integer.valueOf(limit) - Integer.valueOf(limit);
-                typedQuery.setFirstResult(offset);
-                typedQuery.setMaxResults(Integer.valueOf(limit));
-            } else if (limit != null) {
-                typedQuery.setMaxResults(Integer.valueOf(limit));
-            } else {
-                typedQuery.setMaxResults(Integer.valueOf(500));
-            }
-        } else {
-            typedQuery.setMaxResults(Integer.valueOf(500));
+    /**
+     * Returns the <tt>shift</tt> column of a field.
+     */
+    private static String column(final String field) {
+        if (field.equals("type")) {
+            return "s.type_id";
+        }
+        final StringBuilder column = new StringBuilder("s.");
+        for (char c : field.toCharArray()) {
+            column.append(Character.isUpperCase(c) ? "_" + Character.toLowerCase(c) : c);
         }
+        return column.toString();
+    }
 
-        if(matches.isEmpty()) {
-            return new Shifts();
+    /**
+     * Converts a column value of a native query to the type of the field.
+     */
+    private static Object value(final String field, final Object value) {
+        if (value == null) {
+            return null;
+        } else if (field.equals("id")) {
+            return ((Number) value).intValue();
+        } else if (field.equals("type")) {
+            return TypeRegistry.getInstance().findById(((Number) value).intValue());
         }
-        try {
-            final Shifts result = new Shifts();
-            List<Shift> rs = typedQuery.getResultList();
+        return value;
+    }
 
-            if (rs != null) {
-                Iterator<Shift> iterator = rs.iterator();
-                while (iterator.hasNext()) {
-                    Shift shift = iterator.next();
-                    result.addShift(shift);
-                }
-            }
-            log.info("matches criteria " + matches.entrySet().stream().map(e -> {
-                return e.getKey()+":"+String.join("", e.getValue());
-            }).collect(Collectors.joining()) + "  result: " + result.size());
-            em.getTransaction().commit();
-            return result;
-        } catch (Exception e) {
-            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                    "JPA exception: " + e);
-        } finally {
-            try {
-                if (em.getTransaction() != null && em.getTransaction().isActive()) {
-                    em.getTransaction().rollback();
-                }
-            } catch (Exception e) {
+    /**
+     * Builds a shift holding only the selected <tt>fields</tt>, whose values are given by <tt>values</tt>.
+     */
+    private static Shift project(final Function<String, Object> values, final Set<String> fields) {
+        final Shift shift = new Shift();
+        for (String field : fields) {
+            final Object value = values.apply(field);
+            if (field.equals("id")) {
+                shift.setId((Integer) value);
+            } else if (field.equals("type")) {
+                shift.setType((Type) value);
+            } else if (field.equals("owner")) {
+                shift.setOwner((String) value);
+            } else if (field.equals("startDate")) {
+                shift.setStartDate((Date) value);
+            } else if (field.equals("endDate")) {
+                shift.setEndDate((Date) value);
+            } else if (field.equals("description")) {
+                shift.setDescription((String) value);
+            } else if (field.equals("leadOperator")) {
+                shift.setLeadOperator((String) value);
+            } else if (field.equals("onShiftPersonal")) {
+                shift.setOnShiftPersonal((String) value);
+            } else if (field.equals("report")) {
+                shift.setReport((String) value);
+            } else if (field.equals("closeShiftUser")) {
+                shift.setCloseShiftUser((String) value);
             }
-            em.close();
         }
-
+        return shift;
     }
 
     /**
@@ -319,99 +258,250 @@ public class ShiftManager {
     /**
      * Add the end Date to a shift
      * specified in the Shift <tt>shift</tt>.
+     * The shift is ended by a single conditional update, so of two concurrent
+     * requests only one can succeed.
      *
      *
      * @param shift Shift shift to end
-     * @throws ShiftFinderException on ownership mismatch, or wrapping an SQLException
+     * @throws ShiftFinderException CONFLICT if the shift is already ended, or wrapping an SQLException
      */
     public Shift endShift(final Shift shift) throws ShiftFinderException {
-        try {
-            final Shift existingShift = findShiftById(shift.getId());
-            if(existingShift.getEndDate() != null)  {
-                throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                        "The shift " + existingShift.getId() + " is already end");
-            }
-            //Prevent that the user override this values
-            shift.setStartDate(existingShift.getStartDate());
-            shift.setOwner(existingShift.getOwner());
-            shift.setLeadOperator(existingShift.getLeadOperator());
-            shift.setType(existingShift.getType());
-            shift.setEndDate(new Date());
-            JPAUtil.update(shift);
-            return shift;
-        } catch (Exception e) {
-            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                    "JPA exception: " + e);
-        }
+        final Shift result = transition("endShift", shift, endUpdate, "now", new Date(), "is already end");
+        OpenShiftIndex.getInstance().ended(result);
+        ShiftLengths.getInstance().ended(result);
+        ShiftEvents.getInstance().publish("end", result);
+        return result;
     }
 
 
     /**
      * Add the user that close the shift
      * specified in the Shift <tt>shift</tt>.
+     * The shift is closed by a single conditional update, so of two concurrent
+     * requests only one can succeed.
      *
      *
      * @param shift Shift shift
-     * @throws ShiftFinderException on ownership mismatch, or wrapping an SQLException
+     * @throws ShiftFinderException CONFLICT if the shift is not ended or already closed, or wrapping an SQLException
      */
     public Shift closeShift(final Shift shift, final String user) throws ShiftFinderException {
+        final Shift result = transition("closeShift", shift, closeUpdate, "user", user,
+                "is not end or is already close");
+        ShiftEvents.getInstance().publish("close", result);
+        return result;
+    }
+
+    /**
+     * Applies a state transition update to a shift and returns the updated shift.
+     * Only the description, on shift personal and report are taken from <tt>shift</tt>.
+     *
+     * @param method name of the calling method, for the {@link ShiftMetrics}
+     * @param shift shift to update
+     * @param update JPQL conditional update
+     * @param name name of the transition specific parameter of the update
+     * @param value value of that parameter
+     * @param conflict reason reported when the update does not apply
+     * @return updated shift
+     * @throws ShiftFinderException NOT_FOUND or CONFLICT if no row was updated, or wrapping an SQLException
+     */
+    private Shift transition(final String method, final Shift shift, final String update, final String name,
+                             final Object value, final String conflict) throws ShiftFinderException {
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
         try {
-            final Shift existingShift = findShiftById(shift.getId());
-            if(existingShift.getEndDate() == null || existingShift.getCloseShiftUser() != null)  {
-                throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                        "The shift " + existingShift.getId() + " is already close");
-            }
-            //Prevent that the user override this values
-            shift.setStartDate(existingShift.getStartDate());
-            shift.setEndDate(existingShift.getEndDate());
-            shift.setOwner(existingShift.getOwner());
-            shift.setLeadOperator(existingShift.getLeadOperator());
-            shift.setType(existingShift.getType());
-            shift.setCloseShiftUser(user);
-            JPAUtil.update(shift);
-            return shift;
+            JPAUtil.startTransaction(em);
+            final Shift result = transition(em, shift, update, name, value, conflict);
+            JPAUtil.finishTransacton(em);
+            return result;
+        } catch (ShiftFinderException e) {
+            JPAUtil.transactionFailed(em);
+            throw e;
         } catch (Exception e) {
+            JPAUtil.transactionFailed(em);
             throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
                     "JPA exception: " + e);
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+            ShiftMetrics.getInstance().queried(method, start);
         }
     }
 
     /**
-     * Find the last open shift
-     * @throws ShiftFinderException
+     * Applies a state transition update within the transaction of <tt>em</tt>.
      */
-    public Shift getOpenShift(final String typeName) throws ShiftFinderException {
-        List<Integer> typeIds = findTypesIdByName(typeName);
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
-        final CriteriaQuery<Shift> cq = cb.createQuery(Shift.class);
-        final Root<Shift> from = cq.from(Shift.class);
-        Join<Shift, Type> type = from.join(Shift_.type, JoinType.LEFT);
-        final CriteriaQuery<Shift> select = cq.select(from);
-        final Predicate typePredicate = cb.equal(type.get(Type_.id), typeIds);
-        final Predicate endDatePredicate = cb.isNull(from.get("endDate"));
-        final Predicate finalPredicate = cb.and(typePredicate, endDatePredicate);
-        select.where(finalPredicate);
-        cq.orderBy(cb.asc(from.get(Shift_.startDate)));
-        final TypedQuery<Shift> typedQuery = em.createQuery(select);
-        JPAUtil.startTransaction(em);
+    private static Shift transition(final EntityManager em, final Shift shift, final String update,
+                                    final String name, final Object value, final String conflict)
+            throws ShiftFinderException {
+        if (shift.getId() == null) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST, "The shift does not contain an id");
+        }
+        final Query query = em.createQuery(update)
+                .setParameter("id", shift.getId())
+                .setParameter("description", shift.getDescription())
+                .setParameter("onShiftPersonal", shift.getOnShiftPersonal())
+                .setParameter("report", shift.getReport())
+                .setParameter(name, value);
+        if (query.executeUpdate() == 0) {
+            if (em.find(Shift.class, shift.getId()) == null) {
+                throw new ShiftFinderException(Response.Status.NOT_FOUND,
+                        "The shift " + shift.getId() + " does not exist");
+            }
+            throw new ShiftFinderException(Response.Status.CONFLICT,
+                    "The shift " + shift.getId() + " " + conflict);
+        }
+        // the bulk update bypasses the persistence context, which may hold the shift already
+        em.clear();
+        return em.find(Shift.class, shift.getId());
+    }
+
+    private static final String endUpdate = "UPDATE Shift s SET s.endDate = :now,"
+            + " s.description = :description, s.onShiftPersonal = :onShiftPersonal, s.report = :report"
+            + " WHERE s.id = :id AND s.endDate IS NULL";
+    private static final String closeUpdate = "UPDATE Shift s SET s.closeShiftUser = :user,"
+            + " s.description = :description, s.onShiftPersonal = :onShiftPersonal, s.report = :report"
+            + " WHERE s.id = :id AND s.endDate IS NOT NULL AND s.closeShiftUser IS NULL";
+
+    /**
+     * Applies a batch of starts, ends and closes in one transaction, in order.
+     * Either all transitions are committed, or none: on the first failure the transaction is
+     * rolled back, the failed transition reports its error and the others
+     * {@link ShiftTransitionResults#FAILED_DEPENDENCY}.
+     * A shift ended earlier in the batch no longer blocks a start of its type.
+     *
+     * @param transitions transitions to apply
+     * @param user name of the user closing shifts
+     * @return one result per transition
+     * @throws ShiftFinderException wrapping an SQLException
+     */
+    public ShiftTransitionResults applyBatch(final List<ShiftTransition> transitions, final String user)
+            throws ShiftFinderException {
+        final ShiftTransitionResults results = new ShiftTransitionResults();
+        // open shift per type id as seen inside the batch, null once ended
+        final Map<Integer, Shift> open = new HashMap<Integer, Shift>();
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
         try {
-            Shift result = null;
-            final List<Shift> rs = typedQuery.getResultList();
-            if (rs != null) {
-                Iterator<Shift> iterator = rs.iterator();
-                while (iterator.hasNext()) {
-                    result = iterator.next();
+            JPAUtil.startTransaction(em);
+            for (ShiftTransition transition : transitions) {
+                final String action = transition.getAction() == null ? "" : transition.getAction().toLowerCase();
+                try {
+                    if (transition.getShift() == null) {
+                        throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                                "The transition does not contain a shift");
+                    }
+                    final Shift result;
+                    if (action.equals(ShiftTransition.START)) {
+                        result = startInBatch(em, transition.getShift(), open);
+                    } else if (action.equals(ShiftTransition.END)) {
+                        result = transition(em, transition.getShift(), endUpdate, "now", new Date(), "is already end");
+                        open.put(result.getType().getId(), null);
+                    } else if (action.equals(ShiftTransition.CLOSE)) {
+                        result = transition(em, transition.getShift(), closeUpdate, "user", user,
+                                "is not end or is already close");
+                    } else {
+                        throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                                "Unknown transition '" + transition.getAction() + "'");
+                    }
+                    results.add(new ShiftTransitionResult(results.size(), action, 200, null, result));
+                } catch (ShiftFinderException e) {
+                    JPAUtil.transactionFailed(em);
+                    return failed(results, transitions, action, e);
+                } catch (RuntimeException e) {
+                    JPAUtil.transactionFailed(em);
+                    return failed(results, transitions, action,
+                            new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR, "JPA exception: " + e));
                 }
             }
-
-            return result;
+            JPAUtil.finishTransacton(em);
+            results.setCommitted(true);
+        } catch (ShiftFinderException e) {
+            JPAUtil.transactionFailed(em);
+            throw e;
         } catch (Exception e) {
+            JPAUtil.transactionFailed(em);
             throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
                     "JPA exception: " + e);
         } finally {
-            JPAUtil.finishTransacton(em);
+            if (em.isOpen()) {
+                em.close();
+            }
+            ShiftMetrics.getInstance().queried("applyBatch", start);
+        }
+        for (ShiftTransitionResult result : results) {
+            if (result.getAction().equals(ShiftTransition.START)) {
+                OpenShiftIndex.getInstance().started(result.getShift());
+            } else if (result.getAction().equals(ShiftTransition.END)) {
+                OpenShiftIndex.getInstance().ended(result.getShift());
+                ShiftLengths.getInstance().ended(result.getShift());
+            }
+            ShiftEvents.getInstance().publish(result.getAction(), result.getShift());
+        }
+        return results;
+    }
+
+    private Shift startInBatch(final EntityManager em, final Shift shift, final Map<Integer, Shift> open)
+            throws ShiftFinderException {
+        if (shift.getType() == null || shift.getType().getName() == null) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "The shift do not contains a valid type, please add a valid type before trying to start it");
+        }
+        final Type type = findTypeByName(shift.getType().getName());
+        if (type == null) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "The shift type '" + shift.getType().getName() + "' does not exist");
+        }
+        final Shift openShift = open.containsKey(type.getId())
+                ? open.get(type.getId()) : OpenShiftIndex.getInstance().get(type.getId());
+        if (openShift != null) {
+            throw new ShiftFinderException(Response.Status.CONFLICT,
+                    "The shift " + openShift.getId() + " is still open, please continue using that shift or end it before trying to start a new one");
+        }
+        shift.setStartDate(new Date());
+        shift.setType(type);
+        em.persist(shift);
+        em.flush();
+        open.put(type.getId(), shift);
+        return shift;
+    }
+
+    /**
+     * Reports a rolled back batch: the failed transition with its error, the others as not applied.
+     */
+    private static ShiftTransitionResults failed(final ShiftTransitionResults applied,
+                                                 final List<ShiftTransition> transitions, final String action,
+                                                 final ShiftFinderException cause) {
+        final ShiftTransitionResults results = new ShiftTransitionResults();
+        final int failed = applied.size();
+        for (int i = 0; i < transitions.size(); i++) {
+            final String name = transitions.get(i).getAction();
+            if (i == failed) {
+                results.add(new ShiftTransitionResult(i, action, cause.getResponseStatusCode(),
+                        cause.getMessage(), null));
+            } else {
+                results.add(new ShiftTransitionResult(i, name, ShiftTransitionResults.FAILED_DEPENDENCY,
+                        i < failed ? "Rolled back, transition " + failed + " failed"
+                                : "Not applied, transition " + failed + " failed", null));
+            }
         }
+        log.info("batch rolled back at transition " + failed + ": " + cause.getMessage());
+        return results;
+    }
+
+    /**
+     * Find the last open shift, served from the {@link OpenShiftIndex}.
+     *
+     * @param typeName name of the shift type
+     * @return the open shift, or null if there is none
+     * @throws ShiftFinderException
+     */
+    public Shift getOpenShift(final String typeName) throws ShiftFinderException {
+        final Type openType = findTypeByName(typeName);
+        if (openType == null) {
+            return null;
+        }
+        return OpenShiftIndex.getInstance().get(openType.getId());
     }
 
     /**
@@ -420,19 +510,30 @@ public class ShiftManager {
      * @throws ShiftFinderException
      */
     public Shift startShift(final Shift shift) throws ShiftFinderException {
+        final Type type = findTypeByName(shift.getType().getName());
+        if (type == null) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "The shift type '" + shift.getType().getName() + "' does not exist");
+        }
+        final long start = System.nanoTime();
         try {
             shift.setStartDate(new Date());
-            shift.setType(findTypeByName(shift.getType().getName()));
+            shift.setType(type);
             JPAUtil.save(shift);
-            return shift;
         } catch (Exception e) {
             throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
                     "JPA exception: " + e);
+        } finally {
+            ShiftMetrics.getInstance().queried("startShift", start);
         }
+        OpenShiftIndex.getInstance().started(shift);
+        ShiftEvents.getInstance().publish("start", shift);
+        return shift;
     }
 
     public Shifts listAllShifts() {
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
         final CriteriaBuilder cb = em.getCriteriaBuilder();
         final CriteriaQuery<Shift> cq = cb.createQuery(Shift.class);
         final Root<Shift> from = cq.from(Shift.class);
@@ -440,7 +541,6 @@ public class ShiftManager {
         cq.orderBy(cb.desc(from.get(Shift_.startDate)));
         final TypedQuery<Shift> typedQuery = em.createQuery(select);
         typedQuery.setMaxResults(500);
-        JPAUtil.startTransaction(em);
         try {
             Shifts result = new Shifts();
             final List<Shift> rs = typedQuery.getResultList();
@@ -456,91 +556,37 @@ public class ShiftManager {
             throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
                     "JPA exception: " + e);
         } finally {
-            JPAUtil.finishTransacton(em);
+            em.close();
+            ShiftMetrics.getInstance().queried("listAllShifts", start);
         }
     }
 
+    /**
+     * Returns all shift types, served from the {@link TypeRegistry}.
+     *
+     * @return Types container
+     */
     public Types listTypes() {
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
-        final CriteriaQuery<Type> cq = cb.createQuery(Type.class);
-        final Root<Type> from = cq.from(Type.class);
-        final CriteriaQuery<Type> select = cq.select(from);
-        final TypedQuery<Type> typedQuery = em.createQuery(select);
-        JPAUtil.startTransaction(em);
-        try {
-            final Types result = new Types();
-            final List<Type> rs = typedQuery.getResultList();
-            if (rs != null) {
-                Iterator<Type> iterator = rs.iterator();
-                while (iterator.hasNext()) {
-                    result.add(iterator.next());
-                }
-            }
-
-            return result;
-        } catch (Exception e) {
-            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                    "JPA exception: " + e);
-        } finally {
-            JPAUtil.finishTransacton(em);
-        }
+        return new Types(TypeRegistry.getInstance().list());
     }
 
+    /**
+     * Returns the ids of the types with the given names, served from the {@link TypeRegistry}.
+     *
+     * @param names type names
+     * @return ids of the known types
+     */
     public List<Integer> findTypesIdByName(final String... names) {
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
-        final CriteriaQuery<Type> cq = cb.createQuery(Type.class);
-        final Root<Type> from = cq.from(Type.class);
-        final CriteriaQuery<Type> select = cq.select(from);
-        Predicate typePredicate = cb.disjunction();
-        typePredicate = cb.or(from.get(Type_.name).in(names), typePredicate);
-        select.where(typePredicate);
-        final TypedQuery<Type> typedQuery = em.createQuery(select);
-        JPAUtil.startTransaction(em);
-        try {
-            final List<Integer> result = new ArrayList<Integer>();
-            final List<Type> rs = typedQuery.getResultList();
-            if (rs != null) {
-                Iterator<Type> iterator = rs.iterator();
-                while (iterator.hasNext()) {
-                    result.add(iterator.next().getId());
-                }
-            }
-
-            return result;
-        } catch (Exception e) {
-            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                    "JPA exception: " + e);
-        } finally {
-            JPAUtil.finishTransacton(em);
-        }
+        return TypeRegistry.getInstance().findIdsByName(names);
     }
 
+    /**
+     * Returns the type with the given name, served from the {@link TypeRegistry}.
+     *
+     * @param name type name
+     * @return type, or null if there is no such type
+     */
     public Type findTypeByName(final String name) {
-        em = JPAUtil.getEntityManagerFactory().createEntityManager();
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
-        final CriteriaQuery<Type> cq = cb.createQuery(Type.class);
-        final Root<Type> from = cq.from(Type.class);
-        final CriteriaQuery<Type> select = cq.select(from);
-        Predicate typePredicate = cb.disjunction();
-        typePredicate = cb.or(from.get(Type_.name).in(name), typePredicate);
-        select.where(typePredicate);
-        final TypedQuery<Type> typedQuery = em.createQuery(select);
-        JPAUtil.startTransaction(em);
-        try {
-            final List<Integer> result = new ArrayList<Integer>();
-            final List<Type> rs = typedQuery.getResultList();
-            if (rs != null) {
-                return rs.iterator().next();
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
-                    "JPA exception: " + e);
-        } finally {
-            JPAUtil.finishTransacton(em);
-        }
+        return TypeRegistry.getInstance().findByName(name);
     }
 }
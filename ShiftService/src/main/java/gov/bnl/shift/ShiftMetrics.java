@@ -0,0 +1,257 @@
+package gov.bnl.shift;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request and database metrics of this service instance: latency histograms and in-flight
+ * requests per REST endpoint, duration of the {@link ShiftManager} queries, connection wait
+ * time and the number of EntityManagers created.
+ * Served in the Prometheus text format by <tt>GET /metrics</tt> and as an MXBean.
+ *
+ */
+public class ShiftMetrics implements ShiftMetricsMXBean {
+
+    // upper bounds of the histogram buckets, in seconds
+    private static final double[] buckets = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static ShiftMetrics instance = new ShiftMetrics();
+
+    private final ConcurrentMap<String, Histogram> requests = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+    private final ConcurrentMap<String, Histogram> queries = new ConcurrentHashMap<String, Histogram>();
+    private final Histogram connectionWaits = new Histogram();
+    private final AtomicLong entityManagers = new AtomicLong();
+
+    private ShiftMetrics() {
+    }
+
+    /**
+     * Returns the (singleton) instance of ShiftMetrics
+     *
+     * @return the instance of ShiftMetrics
+     */
+    public static ShiftMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Cumulative histogram of durations, with the buckets of {@link #buckets}.
+     */
+    static class Histogram {
+        private final LongAdder[] counts = new LongAdder[buckets.length + 1];
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void observe(final long nanos) {
+            final double seconds = nanos / 1e9;
+            int i = 0;
+            while (i < buckets.length && seconds > buckets[i]) {
+                i++;
+            }
+            counts[i].increment();
+            sum.add(nanos);
+        }
+
+        long getCount() {
+            long count = 0;
+            for (LongAdder c : counts) {
+                count += c.sum();
+            }
+            return count;
+        }
+
+        double getMeanMillis() {
+            final long count = getCount();
+            return count == 0 ? 0 : sum.sum() / 1e6 / count;
+        }
+
+        void write(final StringBuilder out, final String name, final String labels) {
+            final String sep = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += counts[i].sum();
+                out.append(name).append("_bucket{").append(sep).append("le=\"").append(buckets[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += counts[buckets.length].sum();
+            out.append(name).append("_bucket{").append(sep).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            final String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(braced).append(' ').append(sum.sum() / 1e9).append('\n');
+            out.append(name).append("_count").append(braced).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    private static Histogram histogram(final ConcurrentMap<String, Histogram> map, final String key) {
+        Histogram h = map.get(key);
+        if (h == null) {
+            final Histogram created = new Histogram();
+            h = map.putIfAbsent(key, created);
+            if (h == null) {
+                h = created;
+            }
+        }
+        return h;
+    }
+
+    private AtomicInteger inFlight(final String endpoint) {
+        AtomicInteger n = inFlight.get(endpoint);
+        if (n == null) {
+            final AtomicInteger created = new AtomicInteger();
+            n = inFlight.putIfAbsent(endpoint, created);
+            if (n == null) {
+                n = created;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Records the start of a request to <tt>endpoint</tt>.
+     *
+     * @param endpoint resource method, e.g. <tt>ShiftResource.read</tt>
+     */
+    public void requestStarted(final String endpoint) {
+        inFlight(endpoint).incrementAndGet();
+    }
+
+    /**
+     * Records the end of a request to <tt>endpoint</tt> started at <tt>start</tt>.
+     *
+     * @param endpoint resource method
+     * @param start start time, from {@link System#nanoTime()}
+     */
+    public void requestFinished(final String endpoint, final long start) {
+        inFlight(endpoint).decrementAndGet();
+        histogram(requests, endpoint).observe(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a database query of a {@link ShiftManager} method started at <tt>start</tt>.
+     *
+     * @param method method name
+     * @param start start time, from {@link System#nanoTime()}
+     */
+    public void queried(final String method, final long start) {
+        histogram(queries, method).observe(System.nanoTime() - start);
+    }
+
+    /**
+     * Records the time spent waiting for a database connection.
+     *
+     * @param start start time of the wait, from {@link System#nanoTime()}
+     */
+    public void connectionAcquired(final long start) {
+        connectionWaits.observe(System.nanoTime() - start);
+    }
+
+    public void entityManagerCreated() {
+        entityManagers.incrementAndGet();
+    }
+
+    private static String label(final String name, final String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    /**
+     * Returns all metrics in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @return metrics text
+     */
+    public String toPrometheus() {
+        final StringBuilder out = new StringBuilder();
+        out.append("# HELP shift_http_request_duration_seconds Duration of the REST requests, per resource method.\n");
+        out.append("# TYPE shift_http_request_duration_seconds histogram\n");
+        for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(requests).entrySet()) {
+            e.getValue().write(out, "shift_http_request_duration_seconds", label("endpoint", e.getKey()));
+        }
+        out.append("# HELP shift_http_requests_in_flight REST requests being served, per resource method.\n");
+        out.append("# TYPE shift_http_requests_in_flight gauge\n");
+        for (Map.Entry<String, AtomicInteger> e : new TreeMap<String, AtomicInteger>(inFlight).entrySet()) {
+            out.append("shift_http_requests_in_flight{").append(label("endpoint", e.getKey())).append("} ")
+                    .append(e.getValue().get()).append('\n');
+        }
+        out.append("# HELP shift_db_query_duration_seconds Duration of the database queries, per ShiftManager method.\n");
+        out.append("# TYPE shift_db_query_duration_seconds histogram\n");
+        for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(queries).entrySet()) {
+            e.getValue().write(out, "shift_db_query_duration_seconds", label("method", e.getKey()));
+        }
+        out.append("# HELP shift_db_connection_wait_seconds Time spent waiting for a pooled database connection.\n");
+        out.append("# TYPE shift_db_connection_wait_seconds histogram\n");
+        connectionWaits.write(out, "shift_db_connection_wait_seconds", "");
+        out.append("# HELP shift_entity_managers_created_total EntityManagers created.\n");
+        out.append("# TYPE shift_entity_managers_created_total counter\n");
+        out.append("shift_entity_managers_created_total ").append(entityManagers.get()).append('\n');
+        return out.toString();
+    }
+
+    private static Map<String, Long> counts(final Map<String, Histogram> histograms) {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            result.put(e.getKey(), e.getValue().getCount());
+        }
+        return result;
+    }
+
+    private static Map<String, Double> means(final Map<String, Histogram> histograms) {
+        final Map<String, Double> result = new TreeMap<String, Double>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            result.put(e.getKey(), e.getValue().getMeanMillis());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return counts(requests);
+    }
+
+    @Override
+    public Map<String, Double> getRequestMeanMillis() {
+        return means(requests);
+    }
+
+    @Override
+    public Map<String, Integer> getRequestsInFlight() {
+        final Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (Map.Entry<String, AtomicInteger> e : inFlight.entrySet()) {
+            result.put(e.getKey(), e.getValue().get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        return counts(queries);
+    }
+
+    @Override
+    public Map<String, Double> getQueryMeanMillis() {
+        return means(queries);
+    }
+
+    @Override
+    public long getConnectionWaits() {
+        return connectionWaits.getCount();
+    }
+
+    @Override
+    public double getConnectionWaitMeanMillis() {
+        return connectionWaits.getMeanMillis();
+    }
+
+    @Override
+    public long getEntityManagersCreated() {
+        return entityManagers.get();
+    }
+}
@@ -0,0 +1,48 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+
+/**
+ * Records the latency and the in-flight count of the requests in the {@link ShiftMetrics},
+ * per resource method. The latency is measured until the response headers are ready, so it
+ * does not include writing streamed entities (export, events).
+ *
+ */
+@Provider
+public class ShiftMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String startProperty = ShiftMetricsFilter.class.getName() + ".start";
+    private static final String endpointProperty = ShiftMetricsFilter.class.getName() + ".endpoint";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(final ContainerRequestContext request) throws IOException {
+        if (resourceInfo == null || resourceInfo.getResourceMethod() == null) {
+            return;
+        }
+        final String endpoint = resourceInfo.getResourceClass().getSimpleName() + "."
+                + resourceInfo.getResourceMethod().getName();
+        request.setProperty(endpointProperty, endpoint);
+        request.setProperty(startProperty, System.nanoTime());
+        ShiftMetrics.getInstance().requestStarted(endpoint);
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request, final ContainerResponseContext response)
+            throws IOException {
+        final Object endpoint = request.getProperty(endpointProperty);
+        final Object start = request.getProperty(startProperty);
+        if (endpoint != null && start != null) {
+            ShiftMetrics.getInstance().requestFinished((String) endpoint, (Long) start);
+        }
+    }
+}
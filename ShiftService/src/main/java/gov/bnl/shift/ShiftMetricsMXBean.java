@@ -0,0 +1,41 @@
+package gov.bnl.shift;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ShiftMetrics}, registered as <tt>gov.bnl.shift:type=ShiftMetrics</tt>.
+ *
+ */
+public interface ShiftMetricsMXBean {
+
+    /**
+     * @return number of requests served, per resource method
+     */
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * @return mean request duration in ms, per resource method
+     */
+    Map<String, Double> getRequestMeanMillis();
+
+    /**
+     * @return requests being served, per resource method
+     */
+    Map<String, Integer> getRequestsInFlight();
+
+    /**
+     * @return number of queries, per ShiftManager method
+     */
+    Map<String, Long> getQueryCounts();
+
+    /**
+     * @return mean query duration in ms, per ShiftManager method
+     */
+    Map<String, Double> getQueryMeanMillis();
+
+    long getConnectionWaits();
+
+    double getConnectionWaitMeanMillis();
+
+    long getEntityManagersCreated();
+}
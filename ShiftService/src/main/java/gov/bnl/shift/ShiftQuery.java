@@ -0,0 +1,602 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filters and pagination of a shift query, parsed from the query parameters of <tt>GET /shift</tt>:
+ * <tt>id</tt>, <tt>type</tt>, <tt>owner</tt>, <tt>description</tt>, <tt>leadOperator</tt>,
+ * <tt>onShiftPersonal</tt>, <tt>from</tt>/<tt>to</tt> (start date range, in seconds since the epoch),
+ * <tt>at</tt> (shifts running at a time, in seconds) or <tt>overlaps</tt> (shifts overlapping a range,
+ * <tt>from,to</tt> in seconds),
+ * <tt>status</tt> (active, end or signed), <tt>page</tt>, <tt>limit</tt> and <tt>after</tt>,
+ * the full-text search <tt>q</tt> over description and report, and the projection <tt>fields</tt>.
+ * Parameter names are case insensitive, other parameters are ignored.
+ *
+ */
+public class ShiftQuery {
+
+    public static final int DEFAULT_LIMIT = 500;
+
+    /**
+     * Shift properties that can be selected with <tt>fields</tt>.
+     */
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("id", "type", "owner",
+            "startDate", "endDate", "description", "leadOperator", "onShiftPersonal", "report", "closeShiftUser"));
+
+    private static final String matchSql = "MATCH (s.description, s.report) AGAINST (? IN NATURAL LANGUAGE MODE)";
+
+    // IN lists are padded to a power of two up to this size, and to a multiple of it beyond
+    private static final int maxBucket = 1024;
+
+    // needed for the status and the cursor of the next page
+    private static final List<String> requiredFields = Arrays.asList("id", "startDate", "endDate", "closeShiftUser");
+
+    private final List<Integer> ids = new ArrayList<Integer>();
+    private final List<String> owners = new ArrayList<String>();
+    private final List<String> descriptions = new ArrayList<String>();
+    private final List<Integer> typeIds = new ArrayList<Integer>();
+    private final List<String> leadOperators = new ArrayList<String>();
+    private final List<String> onShiftPersonals = new ArrayList<String>();
+    private Date startDateFrom = null;
+    private Date startDateTo = null;
+    private String status = null;
+    private Integer page = null;
+    private Integer limit = null;
+    private ShiftCursor after = null;
+    private Set<String> fields = null;
+    private String search = null;
+    private Date overlapFrom = null;
+    private Date overlapTo = null;
+    private Date overlapStart = null;
+
+    private ShiftQuery() {
+    }
+
+    /**
+     * Parses the query parameters of a shift query.
+     * Only the first value of <tt>from</tt>, <tt>to</tt>, <tt>status</tt>, <tt>page</tt>,
+     * <tt>limit</tt>, <tt>after</tt> and <tt>q</tt> is used; values of the other filters are ORed.
+     *
+     * @param matches query parameters
+     * @return parsed query
+     * @throws ShiftFinderException BAD_REQUEST on malformed numbers, ranges or cursors,
+     * <tt>q</tt> with <tt>after</tt>, or <tt>at</tt> with <tt>overlaps</tt>
+     */
+    public static ShiftQuery parse(final MultivaluedMap<String, String> matches) throws ShiftFinderException {
+        final ShiftQuery query = new ShiftQuery();
+        String from = null;
+        String to = null;
+        String at = null;
+        String overlaps = null;
+        for (final Map.Entry<String, List<String>> match : matches.entrySet()) {
+            final String key = match.getKey().toLowerCase();
+            final List<String> values = match.getValue();
+            if (values == null || values.isEmpty()) {
+                continue;
+            }
+            final String first = values.iterator().next();
+            if (key.equals("id")) {
+                for (String value : values) {
+                    query.ids.add(parseInt(key, value));
+                }
+            } else if (key.equals("from")) {
+                from = first;
+            } else if (key.equals("to")) {
+                to = first;
+            } else if (key.equals("owner")) {
+                query.owners.addAll(values);
+            } else if (key.equals("description")) {
+                query.descriptions.addAll(values);
+            } else if (key.equals("type")) {
+                query.typeIds.addAll(TypeRegistry.getInstance().findIdsByName(values.toArray(new String[values.size()])));
+            } else if (key.equals("leadoperator")) {
+                query.leadOperators.addAll(values);
+            } else if (key.equals("onshiftpersonal")) {
+                query.onShiftPersonals.addAll(values);
+            } else if (key.equals("page")) {
+                query.page = parseInt(key, first);
+            } else if (key.equals("limit")) {
+                query.limit = parseInt(key, first);
+            } else if (key.equals("after")) {
+                query.after = ShiftCursor.parse(first);
+            } else if (key.equals("status")) {
+                query.status = first.toLowerCase();
+            } else if (key.equals("fields")) {
+                query.fields = parseFields(values);
+            } else if (key.equals("at")) {
+                at = first;
+            } else if (key.equals("overlaps")) {
+                overlaps = first;
+            } else if (key.equals("q")) {
+                query.search = first.trim().isEmpty() ? null : first.trim();
+            }
+        }
+        if (query.search != null && query.after != null) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "Search results are ordered by relevance, page them with page and limit instead of after");
+        }
+        if (from != null || to != null) {
+            query.startDateFrom = from != null ? new Date(parseLong("from", from) * 1000) : new Date(0);
+            query.startDateTo = to != null ? new Date(parseLong("to", to) * 1000) : new Date();
+        }
+        if (at != null && overlaps != null) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST, "Use either at or overlaps");
+        } else if (at != null) {
+            query.overlapFrom = new Date(parseLong("at", at) * 1000);
+            query.overlapTo = query.overlapFrom;
+        } else if (overlaps != null) {
+            final String[] range = overlaps.split(",");
+            if (range.length != 2) {
+                throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                        "Invalid value '" + overlaps + "' for overlaps, expected from,to");
+            }
+            query.overlapFrom = new Date(parseLong("overlaps", range[0]) * 1000);
+            query.overlapTo = new Date(parseLong("overlaps", range[1]) * 1000);
+            if (query.overlapFrom.after(query.overlapTo)) {
+                throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                        "Invalid value '" + overlaps + "' for overlaps, from is after to");
+            }
+        }
+        if (query.overlapFrom != null) {
+            query.overlapStart = ShiftLengths.getInstance().earliestStart(query.overlapFrom);
+        }
+        return query;
+    }
+
+    /**
+     * Parses comma separated field names, case insensitive, adding the required fields.
+     */
+    private static Set<String> parseFields(final List<String> values) throws ShiftFinderException {
+        final Set<String> requested = new HashSet<String>(requiredFields);
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                if (name.trim().isEmpty()) {
+                    continue;
+                }
+                String field = null;
+                for (String f : FIELDS) {
+                    if (f.equalsIgnoreCase(name.trim())) {
+                        field = f;
+                    }
+                }
+                if (field == null) {
+                    throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                            "Unknown field '" + name.trim() + "', expected some of " + FIELDS);
+                }
+                requested.add(field);
+            }
+        }
+        final Set<String> result = new LinkedHashSet<String>();
+        for (String f : FIELDS) {
+            if (requested.contains(f)) {
+                result.add(f);
+            }
+        }
+        return result;
+    }
+
+    private static int parseInt(final String key, final String value) throws ShiftFinderException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "Invalid value '" + value + "' for " + key, e);
+        }
+    }
+
+    private static long parseLong(final String key, final String value) throws ShiftFinderException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                    "Invalid value '" + value + "' for " + key, e);
+        }
+    }
+
+    public List<Integer> getIds() {
+        return ids;
+    }
+
+    public List<String> getOwners() {
+        return owners;
+    }
+
+    public List<String> getDescriptions() {
+        return descriptions;
+    }
+
+    /**
+     * Returns the ids of the requested types. Unknown type names are skipped, so that an
+     * empty list means no type filter.
+     *
+     * @return type ids
+     */
+    public List<Integer> getTypeIds() {
+        return typeIds;
+    }
+
+    public List<String> getLeadOperators() {
+        return leadOperators;
+    }
+
+    public List<String> getOnShiftPersonals() {
+        return onShiftPersonals;
+    }
+
+    /**
+     * Returns the lower bound of the start date range, or null if there is no date filter.
+     *
+     * @return first start date
+     */
+    public Date getStartDateFrom() {
+        return startDateFrom;
+    }
+
+    /**
+     * Returns the upper bound of the start date range, or null if there is no date filter.
+     *
+     * @return last start date
+     */
+    public Date getStartDateTo() {
+        return startDateTo;
+    }
+
+    /**
+     * Returns the requested status in lower case: active, end or signed.
+     * Any other status matches no shift.
+     *
+     * @return status, or null
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the start of the time range the shifts must overlap: the time of <tt>at</tt>,
+     * or the start of <tt>overlaps</tt>.
+     *
+     * @return range start, or null if there is no overlap filter
+     */
+    public Date getOverlapFrom() {
+        return overlapFrom;
+    }
+
+    /**
+     * Returns the end of the time range the shifts must overlap.
+     *
+     * @return range end, or null if there is no overlap filter
+     */
+    public Date getOverlapTo() {
+        return overlapTo;
+    }
+
+    /**
+     * Returns the earliest start date of a shift overlapping the time range, see {@link ShiftLengths}.
+     * It bounds the start date range the database has to scan.
+     *
+     * @return start date bound, or null if there is no overlap filter
+     */
+    public Date getOverlapStart() {
+        return overlapStart;
+    }
+
+    public ShiftCursor getAfter() {
+        return after;
+    }
+
+    /**
+     * Returns the shift properties to load, in the order of {@link #FIELDS}: the requested ones
+     * plus id, startDate, endDate and closeShiftUser.
+     *
+     * @return fields, or null for whole shifts
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the full-text search terms.
+     *
+     * @return search terms, or null
+     */
+    public String getSearch() {
+        return search;
+    }
+
+    /**
+     * Returns the search terms as lower case words, for databases without a full-text index.
+     *
+     * @return search words
+     */
+    public List<String> getSearchWords() {
+        final List<String> words = new ArrayList<String>();
+        if (search != null) {
+            for (String word : search.toLowerCase().split("\\s+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the maximum number of results, {@link #DEFAULT_LIMIT} if none is given.
+     *
+     * @return result limit
+     */
+    public int getLimit() {
+        return limit != null ? limit : DEFAULT_LIMIT;
+    }
+
+    /**
+     * Returns the number of results to skip: only in offset mode, i.e. with
+     * <tt>page</tt> and <tt>limit</tt> and without <tt>after</tt>.
+     *
+     * @return offset
+     */
+    public int getOffset() {
+        if (isOffsetPaged()) {
+            return page * limit - limit;
+        }
+        return 0;
+    }
+
+    /**
+     * Tells whether results are paginated by offset (<tt>page</tt> and <tt>limit</tt>)
+     * rather than by the <tt>after</tt> cursor.
+     *
+     * @return true in offset mode
+     */
+    public boolean isOffsetPaged() {
+        return page != null && limit != null && after == null;
+    }
+
+    public boolean hasLimit() {
+        return limit != null;
+    }
+
+    /**
+     * Renders the query, without the search terms, as a parameterized JPQL statement selecting
+     * the shifts, or the fields of {@link #getFields()}, newest first.
+     * The statement only depends on which filters are present and on the bucketed number of
+     * values of each list, so that few distinct statements are built and each can be prepared once:
+     * lists are padded to the next power of two by repeating their last value.
+     *
+     * @param params receives the parameter values by name
+     * @return JPQL statement
+     */
+    public String toJpql(final Map<String, Object> params) {
+        final StringBuilder jpql = new StringBuilder("SELECT ");
+        if (fields == null) {
+            jpql.append("s");
+        } else {
+            boolean first = true;
+            for (String field : fields) {
+                jpql.append(first ? "" : ", ").append(field.equals("type") ? "t" : "s." + field);
+                first = false;
+            }
+        }
+        jpql.append(" FROM Shift s");
+        if (fields != null && fields.contains("type")) {
+            jpql.append(" LEFT JOIN s.type t");
+        }
+        final List<String> conditions = new ArrayList<String>();
+        if (!ids.isEmpty()) {
+            conditions.add(jpqlIn("s.id", "id", ids, params));
+        }
+        if (!owners.isEmpty()) {
+            conditions.add(jpqlIn("s.owner", "owner", owners, params));
+        }
+        if (!descriptions.isEmpty()) {
+            final StringBuilder sb = new StringBuilder("(");
+            final int n = bucket(descriptions.size());
+            for (int i = 0; i < n; i++) {
+                sb.append(i == 0 ? "" : " OR ").append("s.description LIKE :description").append(i);
+                params.put("description" + i, "%" + descriptions.get(Math.min(i, descriptions.size() - 1)) + "%");
+            }
+            conditions.add(sb.append(")").toString());
+        }
+        if (!typeIds.isEmpty()) {
+            conditions.add(jpqlIn("s.type.id", "type", typeIds, params));
+        }
+        if (!leadOperators.isEmpty()) {
+            conditions.add(jpqlIn("s.leadOperator", "leadOperator", leadOperators, params));
+        }
+        if (!onShiftPersonals.isEmpty()) {
+            conditions.add(jpqlIn("s.onShiftPersonal", "onShiftPersonal", onShiftPersonals, params));
+        }
+        if (startDateFrom != null) {
+            conditions.add("s.startDate BETWEEN :from AND :to");
+            params.put("from", startDateFrom);
+            params.put("to", startDateTo);
+        }
+        if (overlapFrom != null) {
+            conditions.add("s.startDate BETWEEN :overlapStart AND :overlapTo"
+                    + " AND (s.endDate IS NULL OR s.endDate > :overlapFrom)");
+            params.put("overlapStart", overlapStart);
+            params.put("overlapTo", overlapTo);
+            params.put("overlapFrom", overlapFrom);
+        }
+        if (status != null) {
+            if (status.equals("active")) {
+                conditions.add("s.endDate IS NULL");
+            } else if (status.equals("end")) {
+                conditions.add("s.endDate IS NOT NULL AND s.closeShiftUser IS NULL");
+            } else if (status.equals("signed")) {
+                conditions.add("s.endDate IS NOT NULL AND s.closeShiftUser IS NOT NULL");
+            } else {
+                conditions.add("1 = 0");
+            }
+        }
+        if (after != null) {
+            conditions.add("(s.startDate < :afterDate OR (s.startDate = :afterDate AND s.id < :afterId))");
+            params.put("afterDate", after.getStartDate());
+            params.put("afterId", after.getId());
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            jpql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+        return jpql.append(" ORDER BY s.startDate DESC, s.id DESC").toString();
+    }
+
+    /**
+     * Returns the number of parameters for a list of <tt>size</tt> values.
+     */
+    static int bucket(final int size) {
+        int bucket = 1;
+        while (bucket < size && bucket < maxBucket) {
+            bucket *= 2;
+        }
+        return bucket >= size ? bucket : (size + maxBucket - 1) / maxBucket * maxBucket;
+    }
+
+    private static String jpqlIn(final String path, final String name, final List<?> values,
+                                 final Map<String, Object> params) {
+        final StringBuilder sb = new StringBuilder(path).append(" IN (");
+        final int n = bucket(values.size());
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? ":" : ", :").append(name).append(i);
+            params.put(name + i, values.get(Math.min(i, values.size() - 1)));
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Renders the filters as an SQL WHERE clause on the <tt>shift</tt> table aliased <tt>s</tt>,
+     * adding the values of the placeholders to <tt>params</tt>.
+     *
+     * @param params receives the parameter values, in placeholder order
+     * @return WHERE clause with a leading space, or an empty string without filters
+     */
+    public String toSqlWhere(final List<Object> params) {
+        return toSqlWhere(params, false);
+    }
+
+    /**
+     * Renders the filters as an SQL WHERE clause on the <tt>shift</tt> table aliased <tt>s</tt>,
+     * adding the values of the placeholders to <tt>params</tt>.
+     * With <tt>fullText</tt> the search terms are matched against the FULLTEXT index
+     * <tt>idx_shift_text</tt> (MySQL); otherwise every word must occur in description or report.
+     *
+     * @param params receives the parameter values, in placeholder order
+     * @param fullText whether the database has the FULLTEXT index
+     * @return WHERE clause with a leading space, or an empty string without filters
+     */
+    public String toSqlWhere(final List<Object> params, final boolean fullText) {
+        final List<String> conditions = new ArrayList<String>();
+        if (!ids.isEmpty()) {
+            conditions.add(sqlIn("s.id", ids, params));
+        }
+        if (!owners.isEmpty()) {
+            conditions.add(sqlIn("s.owner", owners, params));
+        }
+        if (!descriptions.isEmpty()) {
+            final StringBuilder sb = new StringBuilder("(");
+            for (String description : descriptions) {
+                if (sb.length() > 1) {
+                    sb.append(" OR ");
+                }
+                sb.append("s.description LIKE ?");
+                params.add("%" + description + "%");
+            }
+            conditions.add(sb.append(")").toString());
+        }
+        if (!typeIds.isEmpty()) {
+            conditions.add(sqlIn("s.type_id", typeIds, params));
+        }
+        if (!leadOperators.isEmpty()) {
+            conditions.add(sqlIn("s.lead_operator", leadOperators, params));
+        }
+        if (!onShiftPersonals.isEmpty()) {
+            conditions.add(sqlIn("s.on_shift_personal", onShiftPersonals, params));
+        }
+        if (startDateFrom != null) {
+            conditions.add("s.start_date BETWEEN ? AND ?");
+            params.add(new Timestamp(startDateFrom.getTime()));
+            params.add(new Timestamp(startDateTo.getTime()));
+        }
+        if (overlapFrom != null) {
+            conditions.add("s.start_date BETWEEN ? AND ? AND (s.end_date IS NULL OR s.end_date > ?)");
+            params.add(new Timestamp(overlapStart.getTime()));
+            params.add(new Timestamp(overlapTo.getTime()));
+            params.add(new Timestamp(overlapFrom.getTime()));
+        }
+        if (status != null) {
+            if (status.equals("active")) {
+                conditions.add("s.end_date IS NULL");
+            } else if (status.equals("end")) {
+                conditions.add("s.end_date IS NOT NULL AND s.close_shift_user IS NULL");
+            } else if (status.equals("signed")) {
+                conditions.add("s.end_date IS NOT NULL AND s.close_shift_user IS NOT NULL");
+            } else {
+                conditions.add("1 = 0");
+            }
+        }
+        if (after != null) {
+            conditions.add("(s.start_date < ? OR (s.start_date = ? AND s.id < ?))");
+            params.add(new Timestamp(after.getStartDate().getTime()));
+            params.add(new Timestamp(after.getStartDate().getTime()));
+            params.add(after.getId());
+        }
+        if (search != null) {
+            if (fullText) {
+                conditions.add(matchSql);
+                params.add(search);
+            } else {
+                for (String word : getSearchWords()) {
+                    conditions.add("(LOWER(s.description) LIKE ? OR LOWER(s.report) LIKE ?)");
+                    params.add("%" + word + "%");
+                    params.add("%" + word + "%");
+                }
+            }
+        }
+        if (conditions.isEmpty()) {
+            return "";
+        }
+        final StringBuilder where = new StringBuilder(" WHERE ");
+        for (int i = 0; i < conditions.size(); i++) {
+            if (i > 0) {
+                where.append(" AND ");
+            }
+            where.append(conditions.get(i));
+        }
+        return where.toString();
+    }
+
+    /**
+     * Renders the SQL ORDER BY clause: newest first, preceded by the relevance of the search
+     * terms if searching with <tt>fullText</tt>.
+     *
+     * @param params receives the parameter values, in placeholder order
+     * @param fullText whether the database has the FULLTEXT index
+     * @return ORDER BY clause with a leading space
+     */
+    public String toSqlOrderBy(final List<Object> params, final boolean fullText) {
+        if (search != null && fullText) {
+            params.add(search);
+            return " ORDER BY " + matchSql + " DESC, s.start_date DESC, s.id DESC";
+        }
+        return " ORDER BY s.start_date DESC, s.id DESC";
+    }
+
+    private static String sqlIn(final String column, final List<?> values, final List<Object> params) {
+        final StringBuilder sb = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < values.size(); i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+            params.add(values.get(i));
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -1,20 +1,33 @@
 package gov.bnl.shift;
 
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.xml.sax.SAXException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
@@ -32,16 +45,61 @@ public class ShiftResource {
     private UriInfo uriInfo;
     @Context
     private javax.ws.rs.core.SecurityContext securityContext;
+    @Context
+    private Request request;
+    @Context
+    private HttpHeaders headers;
 
     private Logger audit = Logger.getLogger(this.getClass().getPackage().getName() + ".audit");
     public static Logger log = Logger.getLogger(ShiftResource.class.getName());
 
+    private static final CacheControl revalidate = new CacheControl();
+    static {
+        revalidate.setNoCache(true);
+    }
+
     /** Creates a new instance of ShiftResource */
     public ShiftResource() {
     }
 
+    /**
+     * Evaluates <tt>If-None-Match</tt>/<tt>If-Modified-Since</tt> against the current version
+     * of the shift data. The date only has a one second resolution, so it is ignored when the
+     * client sends an entity tag, and while the second of the last change is not over.
+     *
+     * @return a 304 response builder if the client copy is current, null otherwise
+     */
+    private Response.ResponseBuilder notModified(final EntityTag tag, final Date lastModified) {
+        if (request == null) {
+            return null;
+        }
+        final List<String> ifNoneMatch = headers != null ? headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH) : null;
+        final Response.ResponseBuilder rb;
+        if (ifNoneMatch != null && !ifNoneMatch.isEmpty()) {
+            rb = request.evaluatePreconditions(tag);
+        } else if (ShiftChanges.getInstance().isChangedThisSecond()) {
+            return null;
+        } else {
+            rb = request.evaluatePreconditions(lastModified, tag);
+        }
+        return rb != null ? rb.tag(tag).cacheControl(revalidate) : null;
+    }
+
+    private static Response.ResponseBuilder versioned(final Response.ResponseBuilder rb, final EntityTag tag,
+                                                      final Date lastModified) {
+        return rb.tag(tag).lastModified(lastModified).cacheControl(revalidate);
+    }
+
     /**
      * GET method for retrieving a collection of shift instances,
+     * Unless paging with <tt>page</tt>, a full page links to the next one through a <tt>Link: rel="next"</tt> header.
+     * <tt>fields</tt> (e.g. <tt>fields=type,owner</tt>) limits the returned properties, which always
+     * include id, startDate, endDate and closeShiftUser.
+     * <tt>q</tt> searches description and report through the full-text index and returns the most
+     * relevant shifts first; search results are paged with <tt>page</tt> and <tt>limit</tt>.
+     * <tt>at</tt> (seconds) returns the shifts running at a time, <tt>overlaps=from,to</tt> those
+     * overlapping a time range.
+     * Answers 304 without a query if the shifts did not change since the client's copy.
      *
      * @return HTTP Response
      */
@@ -49,20 +107,29 @@ public class ShiftResource {
     @Produces({"application/xml", "application/json"})
     public Response listAll() {
         log.info("searching for all shifts");
-        final DbConnection db = DbConnection.getInstance();
         final ShiftManager shiftManager = ShiftManager.getInstance();
         final String user = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : "";
+        final EntityTag tag = ShiftChanges.getInstance().getEntityTag();
+        final Date lastModified = ShiftChanges.getInstance().getLastModified();
+        final Response.ResponseBuilder unchanged = notModified(tag, lastModified);
+        if (unchanged != null) {
+            log.fine(user + "|" + uriInfo.getPath() + "|GET|OK|304");
+            return unchanged.build();
+        }
         try {
-            db.getConnection();
-            db.beginTransaction();
             Shifts result;
             if(uriInfo.getQueryParameters() == null || uriInfo.getQueryParameters().isEmpty()) {
                 result = shiftManager.listAllShifts();
             } else {
                 result = shiftManager.findShiftsByMultiMatch(uriInfo.getQueryParameters());
             }
-            db.commit();
-            final Response r = Response.ok(result).build();
+            final Response.ResponseBuilder rb = versioned(Response.ok(result), tag, lastModified);
+            if (result.getNext() != null) {
+                rb.link(uriInfo.getRequestUriBuilder()
+                        .replaceQueryParam("page")
+                        .replaceQueryParam("after", result.getNext().toString()).build(), "next");
+            }
+            final Response r = rb.build();
             log.info(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus()
                     + "|returns " + result.getShifts().size() + " shifts");
             return r;
@@ -70,11 +137,86 @@ public class ShiftResource {
             log.warning(user + "|" + uriInfo.getPath() + "|GET|ERROR|"
                     + e.getResponseStatusCode() +  "|cause=" + e);
             return e.toResponse();
-        } finally {
-            db.releaseConnection();
         }
     }
 
+    /**
+     * GET method for exporting the shift history as NDJSON or CSV (<tt>format=ndjson|csv</tt>),
+     * filtered by the same query parameters as {@link #listAll()}. The rows are streamed from the
+     * database; without <tt>limit</tt> all matching shifts are exported.
+     *
+     * @param format export format, NDJSON by default
+     * @return HTTP Response
+     */
+    @GET
+    @Path("export")
+    @Produces({"application/x-ndjson", "text/csv"})
+    public Response export(final @QueryParam("format") String format) {
+        final String user = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : "";
+        try {
+            final ShiftExport.Format exportFormat = ShiftExport.Format.parse(format);
+            final ShiftQuery query = ShiftQuery.parse(uriInfo.getQueryParameters() != null
+                    ? uriInfo.getQueryParameters() : new MultivaluedHashMap<String, String>());
+            final Response r = Response.ok(new ShiftExport(query, exportFormat), exportFormat.getMediaType()).build();
+            log.info(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus() + "|export " + exportFormat);
+            return r;
+        } catch (ShiftFinderException e) {
+            log.warning(user + "|" + uriInfo.getPath() + "|GET|ERROR|"
+                    + e.getResponseStatusCode() + "|cause=" + e);
+            return e.toResponse();
+        }
+    }
+
+    /**
+     * GET method for shift counts and durations per group, computed in the database:
+     * <tt>groupBy</tt> takes type, owner, leadOperator, year, month, week and day (by type if not given),
+     * the other query parameters filter the shifts as for {@link #listAll()}.
+     * Answers 304 if the shifts did not change since the client's copy.
+     *
+     * @return HTTP Response
+     */
+    @GET
+    @Path("stats")
+    @Produces({"application/xml", "application/json"})
+    public Response stats() {
+        final String user = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : "";
+        final EntityTag tag = ShiftChanges.getInstance().getEntityTag();
+        final Date lastModified = ShiftChanges.getInstance().getLastModified();
+        final Response.ResponseBuilder unchanged = notModified(tag, lastModified);
+        if (unchanged != null) {
+            log.fine(user + "|" + uriInfo.getPath() + "|GET|OK|304");
+            return unchanged.build();
+        }
+        try {
+            final ShiftStatistics statistics = ShiftStatistics.parse(uriInfo.getQueryParameters() != null
+                    ? uriInfo.getQueryParameters() : new MultivaluedHashMap<String, String>());
+            final ShiftStats result = statistics.compute();
+            final Response r = versioned(Response.ok(result), tag, lastModified).build();
+            log.info(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus()
+                    + "|returns " + result.size() + " groups by " + statistics.getGroupBy());
+            return r;
+        } catch (ShiftFinderException e) {
+            log.warning(user + "|" + uriInfo.getPath() + "|GET|ERROR|"
+                    + e.getResponseStatusCode() + "|cause=" + e);
+            return e.toResponse();
+        }
+    }
+
+    /**
+     * GET method for subscribing to the server-sent events of shift starts, ends and closes.
+     * A client reconnecting with <tt>Last-Event-ID</tt> first gets the events it missed.
+     *
+     * @param lastEventId id of the last event received
+     * @return event stream
+     */
+    @GET
+    @Path("events")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public EventOutput events(final @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) String lastEventId) {
+        log.fine("subscribing to shift events after " + lastEventId);
+        return ShiftEvents.getInstance().subscribe(lastEventId);
+    }
+
     /**
      * GET method for retrieving a collection of types instances,
      *
@@ -84,15 +226,17 @@ public class ShiftResource {
     @Path("type")
     @Produces({"application/xml", "application/json"})
     public Response listTypes() throws ParserConfigurationException, IOException, SAXException {
-        final DbConnection db = DbConnection.getInstance();
         final ShiftManager shiftManager = ShiftManager.getInstance();
         final String user = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : "";
+        final EntityTag tag = ShiftChanges.getInstance().getEntityTag();
+        final Date lastModified = ShiftChanges.getInstance().getLastModified();
+        final Response.ResponseBuilder unchanged = notModified(tag, lastModified);
+        if (unchanged != null) {
+            return unchanged.build();
+        }
         try {
-            db.getConnection();
-            db.beginTransaction();
             final Types result = shiftManager.listTypes();
-            db.commit();
-            final Response r = Response.ok(result).build();
+            final Response r = versioned(Response.ok(result), tag, lastModified).build();
             log.fine(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus()
                     + "|returns ");
             return r;
@@ -100,14 +244,13 @@ public class ShiftResource {
             log.warning(user + "|" + uriInfo.getPath() + "|GET|ERROR|"
                     + e.getResponseStatusCode() + "|cause=" + e);
             return e.toResponse();
-        } finally {
-            db.releaseConnection();
         }
     }
 
     /**
-     * GET method for retrieving a collection of shift instances,
+     * GET method for retrieving the latest shift of a type,
      * based on a multi-parameter query specifiying patterns, id, from-to startDate or owner name
+     * Without query parameters the open shift of the type is served from memory, if there is one
      * Only allow one date from the from and to query, if multiple dates appear on the url, the first ones will be the ones to use
      * "*" will be used as a wild card to retrive all the shifts
      *
@@ -120,12 +263,28 @@ public class ShiftResource {
         log.info("search for shift : " + type );
         final ShiftManager shiftManager = ShiftManager.getInstance();
         final String user = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : "";
+        final EntityTag tag = ShiftChanges.getInstance().getEntityTag();
+        final Date lastModified = ShiftChanges.getInstance().getLastModified();
+        final Response.ResponseBuilder unchanged = notModified(tag, lastModified);
+        if (unchanged != null) {
+            log.fine(user + "|" + uriInfo.getPath() + "|GET|OK|304");
+            return unchanged.build();
+        }
         try {
+            if (uriInfo.getQueryParameters() == null || uriInfo.getQueryParameters().isEmpty()) {
+                final Shift openShift = shiftManager.getOpenShift(type);
+                if (openShift != null) {
+                    final Response r = versioned(Response.ok(openShift), tag, lastModified).build();
+                    log.info(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus()
+                            + "|returns open shift " + openShift.getId());
+                    return r;
+                }
+            }
             MultivaluedMap<String, String> map = new MultivaluedHashMap<String, String>(uriInfo.getQueryParameters());
             map.add("type", type);
 
             Shifts result = shiftManager.findShiftsByMultiMatch(map);
-            final Response r = Response.ok(result.getShiftList().iterator().next()).build();
+            final Response r = versioned(Response.ok(result.getShiftList().iterator().next()), tag, lastModified).build();
             log.info(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus()
                     + "|returns " + result.getShifts().size() + " shifts");
 
@@ -150,20 +309,22 @@ public class ShiftResource {
     @Produces({"application/xml", "application/json"})
     public Response read(final @PathParam("type") String typeName, final @PathParam("shiftId") Integer shiftId) {
         audit.info("getting shift:" + shiftId);
-        final DbConnection db = DbConnection.getInstance();
         final ShiftManager shiftManager = ShiftManager.getInstance();
         final String user = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : "";
+        final EntityTag tag = ShiftChanges.getInstance().getEntityTag();
+        final Date lastModified = ShiftChanges.getInstance().getLastModified();
+        final Response.ResponseBuilder unchanged = notModified(tag, lastModified);
+        if (unchanged != null) {
+            return unchanged.build();
+        }
         Shift result = null;
         try {
-            db.getConnection();
-            db.beginTransaction();
             result = shiftManager.findShiftById(shiftId);
-            db.commit();
             Response r;
             if (result == null) {
                 r = Response.status(Response.Status.NOT_FOUND).build();
             } else {
-                r = Response.ok(result).build();
+                r = versioned(Response.ok(result), tag, lastModified).build();
             }
             log.fine(user + "|" + uriInfo.getPath() + "|GET|OK|" + r.getStatus());
             return r;
@@ -171,8 +332,6 @@ public class ShiftResource {
             log.warning(user + "|" + uriInfo.getPath() + "|GET|ERROR|"
                     + e.getResponseStatusCode() +  "|cause=" + e);
             return e.toResponse();
-        } finally {
-            db.releaseConnection();
         }
     }
 
@@ -186,7 +345,6 @@ public class ShiftResource {
     @Path("start")
     @Consumes({"application/xml", "application/json"})
     public Response create(final Shift newShift) {
-        final DbConnection db = DbConnection.getInstance();
         final ShiftManager shiftManager = ShiftManager.getInstance();
         final UserManager um = UserManager.getInstance();
         um.setUser(securityContext.getUserPrincipal(), securityContext.isUserInRole("Administrator"));
@@ -200,18 +358,13 @@ public class ShiftResource {
                 throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
                         "The shift " + openShift.getId() + " is still open, please continue using that shift or end it before trying to start a new one");
             }
-            db.getConnection();
-            db.beginTransaction();
             final Shift result = shiftManager.startShift(newShift);
-            db.commit();
             final Response r =  Response.ok(result).build();
             audit.info(securityContext.getUserPrincipal().getName() + "|" + uriInfo.getPath() + "|PUT|OK|" + r.getStatus()
                     + "|data=" + Shift.toLogger(newShift));
             return r;
         } catch (ShiftFinderException e) {
             return e.toResponse();
-        } finally {
-            db.releaseConnection();
         }
     }
 
@@ -226,22 +379,16 @@ public class ShiftResource {
     @Consumes({"application/xml", "application/json"})
     public Response endShift(final Shift shift) {
         final UserManager um = UserManager.getInstance();
-        final DbConnection db = DbConnection.getInstance();
         final ShiftManager shiftManager = ShiftManager.getInstance();
         um.setUser(securityContext.getUserPrincipal(), securityContext.isUserInRole("Administrator"));
         try {
-            db.getConnection();
-            db.beginTransaction();
             final Shift result = shiftManager.endShift(shift);
-            db.commit();
             final Response r =  Response.ok(result).build();
             audit.info(securityContext.getUserPrincipal().getName() + "|" + uriInfo.getPath() + "|PUT|OK|" + r.getStatus()
                     + "|data=" + Shift.toLogger(shift));
             return r;
         } catch (ShiftFinderException e) {
             return e.toResponse();
-        } finally {
-            db.releaseConnection();
         }
     }
 
@@ -256,23 +403,105 @@ public class ShiftResource {
     @Consumes({"application/xml", "application/json"})
     public Response closeShift(final Shift shift) {
         final UserManager um = UserManager.getInstance();
-        final DbConnection db = DbConnection.getInstance();
         final ShiftManager shiftManager = ShiftManager.getInstance();
         um.setUser(securityContext.getUserPrincipal(), securityContext.isUserInRole("Administrator"));
         try {
-            db.getConnection();
-            db.beginTransaction();
 //            shiftManager.checkUserBelongsToGroup(um.getUserName(), shift);
             final Shift result = shiftManager.closeShift(shift, um.getUserName());
-            db.commit();
             final Response r =  Response.ok(result).build();
             audit.info(securityContext.getUserPrincipal().getName() + "|" + uriInfo.getPath() + "|PUT|OK|" + r.getStatus()
                     + "|data=" + Shift.toLogger(shift));
             return r;
         } catch (ShiftFinderException e) {
             return e.toResponse();
-        } finally {
-            db.releaseConnection();
+        }
+    }
+
+    /**
+     * PUT method for applying a batch of shift starts, ends and closes in one transaction.
+     * The batch is applied completely or not at all; the response lists the outcome of
+     * every transition. A rolled back batch is answered with 409 Conflict and the results,
+     * the failed transition carrying its own status.
+     * Closing shifts requires the Administrator role, as for <tt>close</tt>.
+     *
+     * @param transitions
+     * @return HTTP response
+     */
+    @PUT
+    @Path("batch")
+    @Consumes({"application/xml", "application/json"})
+    @Produces({"application/xml", "application/json"})
+    public Response applyBatch(final ShiftTransitions transitions) {
+        final UserManager um = UserManager.getInstance();
+        final ShiftManager shiftManager = ShiftManager.getInstance();
+        um.setUser(securityContext.getUserPrincipal(), securityContext.isUserInRole("Administrator"));
+        try {
+            if (transitions == null || transitions.isEmpty()) {
+                throw new ShiftFinderException(Response.Status.BAD_REQUEST, "The batch is empty");
+            }
+            for (ShiftTransition transition : transitions) {
+                if (ShiftTransition.CLOSE.equalsIgnoreCase(transition.getAction()) && !um.userHasAdminRole()) {
+                    throw new ShiftFinderException(Response.Status.FORBIDDEN,
+                            "User '" + um.getUserName() + "' does not have permission to close shifts");
+                }
+            }
+            final ShiftTransitionResults results = shiftManager.applyBatch(transitions, um.getUserName());
+            final Response r = Response.status(results.getStatus()).entity(results).build();
+            audit.info(securityContext.getUserPrincipal().getName() + "|" + uriInfo.getPath() + "|PUT|"
+                    + (results.isCommitted() ? "OK" : "ROLLBACK") + "|" + r.getStatus()
+                    + "|transitions=" + transitions.size());
+            return r;
+        } catch (ShiftFinderException e) {
+            return e.toResponse();
+        }
+    }
+
+    /**
+     * POST method for importing historical shifts, streamed as NDJSON (the format of <tt>export</tt>)
+     * or as an XML shift list. Requires the Administrator role. Complete shifts are inserted in
+     * batches; the response counts the rows read, imported and rejected, with the row errors.
+     *
+     * @param input request body
+     * @return HTTP response
+     */
+    @POST
+    @Path("import")
+    @Consumes("application/x-ndjson")
+    @Produces({"application/xml", "application/json"})
+    public Response importNdjson(final InputStream input) {
+        return importShifts(ShiftImport.Format.NDJSON, input);
+    }
+
+    /**
+     * POST method for importing historical shifts as XML, see {@link #importNdjson(InputStream)}.
+     *
+     * @param input request body
+     * @return HTTP response
+     */
+    @POST
+    @Path("import")
+    @Consumes("application/xml")
+    @Produces({"application/xml", "application/json"})
+    public Response importXml(final InputStream input) {
+        return importShifts(ShiftImport.Format.XML, input);
+    }
+
+    private Response importShifts(final ShiftImport.Format format, final InputStream input) {
+        final UserManager um = UserManager.getInstance();
+        um.setUser(securityContext.getUserPrincipal(), securityContext.isUserInRole("Administrator"));
+        try {
+            if (!um.userHasAdminRole()) {
+                throw new ShiftFinderException(Response.Status.FORBIDDEN,
+                        "User '" + um.getUserName() + "' does not have permission to import shifts");
+            }
+            final ShiftImportResult result = new ShiftImport(format).run(input);
+            final Response r = Response.ok(result).build();
+            audit.info(securityContext.getUserPrincipal().getName() + "|" + uriInfo.getPath() + "|POST|OK|"
+                    + r.getStatus() + "|rows=" + result.getRows() + ", imported=" + result.getImported()
+                    + ", failed=" + result.getFailed());
+            return r;
+        } catch (ShiftFinderException e) {
+            return e.toResponse();
         }
     }
 
@@ -283,4 +512,8 @@ public class ShiftResource {
     public void setUriInfo(final UriInfo info) {
         this.uriInfo = info;
     }
+
+    public void setRequest(final Request request) {
+        this.request = request;
+    }
 }
@@ -0,0 +1,63 @@
+package gov.bnl.shift;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the in-memory state of the service and registers its metrics MBean when the web application starts.
+ * If the database is not reachable at that time, the state is loaded on first use.
+ *
+ */
+public class ShiftServiceListener implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger(ShiftServiceListener.class.getName());
+
+    private static final ObjectName metricsName;
+
+    static {
+        try {
+            metricsName = new ObjectName("gov.bnl.shift:type=ShiftMetrics");
+        } catch (MalformedObjectNameException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public void contextInitialized(final ServletContextEvent sce) {
+        try {
+            TypeRegistry.getInstance().refresh();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not load shift types at startup", e);
+        }
+        try {
+            OpenShiftIndex.getInstance().rebuild();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not load open shifts at startup", e);
+        }
+        try {
+            ShiftLengths.getInstance().rebuild();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not load the shift lengths at startup", e);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(ShiftMetrics.getInstance(), metricsName);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not register the metrics MBean", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent sce) {
+        ShiftEvents.getInstance().shutdown();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (Exception e) {
+            log.log(Level.FINE, "Could not unregister the metrics MBean", e);
+        }
+    }
+}
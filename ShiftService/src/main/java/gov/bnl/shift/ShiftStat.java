@@ -0,0 +1,165 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Aggregates of one group of shifts: the number of shifts and the total and average duration
+ * of the ended ones, in seconds. Only the attributes the shifts are grouped by are set.
+ *
+ */
+@XmlRootElement(name = "stat")
+@XmlType(propOrder = {"type", "owner", "leadOperator", "year", "month", "week", "day",
+        "count", "ended", "totalSeconds", "averageSeconds"})
+public class ShiftStat {
+
+    private String type = null;
+    private String owner = null;
+    private String leadOperator = null;
+    private String year = null;
+    private String month = null;
+    private String week = null;
+    private String day = null;
+    private long count;
+    private long ended;
+    private long totalSeconds;
+    private double averageSeconds;
+
+    public ShiftStat() {
+    }
+
+    @XmlAttribute
+    public String getType() {
+        return type;
+    }
+
+    public void setType(final String type) {
+        this.type = type;
+    }
+
+    @XmlAttribute
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(final String owner) {
+        this.owner = owner;
+    }
+
+    @XmlAttribute
+    public String getLeadOperator() {
+        return leadOperator;
+    }
+
+    public void setLeadOperator(final String leadOperator) {
+        this.leadOperator = leadOperator;
+    }
+
+    @XmlAttribute
+    public String getYear() {
+        return year;
+    }
+
+    public void setYear(final String year) {
+        this.year = year;
+    }
+
+    /**
+     * Getter for the month of the start dates, e.g. <tt>2015-01</tt>.
+     *
+     * @return month
+     */
+    @XmlAttribute
+    public String getMonth() {
+        return month;
+    }
+
+    public void setMonth(final String month) {
+        this.month = month;
+    }
+
+    /**
+     * Getter for the ISO 8601 week of the start dates, e.g. <tt>2015-W05</tt>.
+     *
+     * @return week
+     */
+    @XmlAttribute
+    public String getWeek() {
+        return week;
+    }
+
+    public void setWeek(final String week) {
+        this.week = week;
+    }
+
+    /**
+     * Getter for the day of the start dates, e.g. <tt>2015-01-31</tt>.
+     *
+     * @return day
+     */
+    @XmlAttribute
+    public String getDay() {
+        return day;
+    }
+
+    public void setDay(final String day) {
+        this.day = day;
+    }
+
+    /**
+     * Getter for the number of shifts in the group, open or ended.
+     *
+     * @return number of shifts
+     */
+    @XmlAttribute
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(final long count) {
+        this.count = count;
+    }
+
+    /**
+     * Getter for the number of ended shifts, whose durations are summed.
+     *
+     * @return number of ended shifts
+     */
+    @XmlAttribute
+    public long getEnded() {
+        return ended;
+    }
+
+    public void setEnded(final long ended) {
+        this.ended = ended;
+    }
+
+    /**
+     * Getter for the total duration of the ended shifts.
+     *
+     * @return seconds
+     */
+    @XmlAttribute
+    public long getTotalSeconds() {
+        return totalSeconds;
+    }
+
+    public void setTotalSeconds(final long totalSeconds) {
+        this.totalSeconds = totalSeconds;
+    }
+
+    /**
+     * Getter for the average duration of the ended shifts.
+     *
+     * @return seconds, 0 without ended shifts
+     */
+    @XmlAttribute
+    public double getAverageSeconds() {
+        return averageSeconds;
+    }
+
+    public void setAverageSeconds(final double averageSeconds) {
+        this.averageSeconds = averageSeconds;
+    }
+}
@@ -0,0 +1,200 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shift counts and durations per group, computed by a single GROUP BY query in the database:
+ * <tt>GET /shift/stats?groupBy=type,month</tt>. The shifts are filtered by the query parameters
+ * of <tt>GET /shift</tt>; durations are summed over the ended shifts. Periods are taken from the
+ * start date, in the time zone of the database.
+ *
+ */
+public class ShiftStatistics {
+
+    /**
+     * Properties the shifts can be grouped by.
+     */
+    public static final List<String> GROUPS = Collections.unmodifiableList(Arrays.asList("type", "owner",
+            "leadOperator", "year", "month", "week", "day"));
+
+    private final ShiftQuery query;
+    private final List<String> groupBy;
+
+    private ShiftStatistics(final ShiftQuery query, final List<String> groupBy) {
+        this.query = query;
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * Parses the query parameters of a statistics request: the filters of {@link ShiftQuery}
+     * and <tt>groupBy</tt>, comma separated names of {@link #GROUPS} (case insensitive),
+     * by type if none is given.
+     *
+     * @param matches query parameters
+     * @return parsed request
+     * @throws ShiftFinderException BAD_REQUEST on malformed filters or unknown groups
+     */
+    public static ShiftStatistics parse(final MultivaluedMap<String, String> matches) throws ShiftFinderException {
+        final List<String> groupBy = new ArrayList<String>();
+        for (final Map.Entry<String, List<String>> match : matches.entrySet()) {
+            if (!match.getKey().equalsIgnoreCase("groupBy") || match.getValue() == null) {
+                continue;
+            }
+            for (String value : match.getValue()) {
+                for (String name : value.split(",")) {
+                    if (name.trim().isEmpty()) {
+                        continue;
+                    }
+                    String group = null;
+                    for (String g : GROUPS) {
+                        if (g.equalsIgnoreCase(name.trim())) {
+                            group = g;
+                        }
+                    }
+                    if (group == null) {
+                        throw new ShiftFinderException(Response.Status.BAD_REQUEST,
+                                "Unknown group '" + name.trim() + "', expected some of " + GROUPS);
+                    }
+                    if (!groupBy.contains(group)) {
+                        groupBy.add(group);
+                    }
+                }
+            }
+        }
+        if (groupBy.isEmpty()) {
+            groupBy.add("type");
+        }
+        return new ShiftStatistics(ShiftQuery.parse(matches), groupBy);
+    }
+
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * Returns the SQL expression of a group. Weeks are ISO 8601 weeks, rendered as
+     * <tt>year * 100 + week</tt>; months as <tt>year * 100 + month</tt>.
+     */
+    private static String groupSql(final String group, final boolean mysql) {
+        if (group.equals("type")) {
+            return "t.name";
+        } else if (group.equals("owner")) {
+            return "s.owner";
+        } else if (group.equals("leadOperator")) {
+            return "s.lead_operator";
+        } else if (group.equals("year")) {
+            return "YEAR(s.start_date)";
+        } else if (group.equals("month")) {
+            return "YEAR(s.start_date) * 100 + MONTH(s.start_date)";
+        } else if (group.equals("week")) {
+            return mysql ? "YEARWEEK(s.start_date, 3)" : "ISO_YEAR(s.start_date) * 100 + ISO_WEEK(s.start_date)";
+        }
+        return "CAST(s.start_date AS DATE)";
+    }
+
+    /**
+     * Builds the aggregation statement: one row per group with the group values,
+     * the number of shifts, the number of ended shifts and their total duration in seconds.
+     *
+     * @param params receives the parameter values, in placeholder order
+     * @param mysql whether the database is MySQL, with the FULLTEXT index
+     * @return SQL statement
+     */
+    String toSql(final List<Object> params, final boolean mysql) {
+        final StringBuilder groups = new StringBuilder();
+        for (String group : groupBy) {
+            if (groups.length() > 0) {
+                groups.append(", ");
+            }
+            groups.append(groupSql(group, mysql));
+        }
+        final StringBuilder sql = new StringBuilder("SELECT ").append(groups)
+                .append(", COUNT(*), COUNT(s.end_date), SUM(TIMESTAMPDIFF(SECOND, s.start_date, s.end_date))")
+                .append(" FROM shift s");
+        if (groupBy.contains("type")) {
+            sql.append(" JOIN type t ON t.id = s.type_id");
+        }
+        sql.append(query.toSqlWhere(params, mysql));
+        sql.append(" GROUP BY ").append(groups);
+        sql.append(" ORDER BY ").append(groups);
+        return sql.toString();
+    }
+
+    /**
+     * Runs the aggregation.
+     *
+     * @return one result per group
+     * @throws ShiftFinderException wrapping an SQLException
+     */
+    public ShiftStats compute() throws ShiftFinderException {
+        final DbConnection db = DbConnection.getInstance();
+        final long start = System.nanoTime();
+        try {
+            db.beginReadOnlyTransaction();
+            final boolean mysql = "MySQL".equals(db.getConnection().getMetaData().getDatabaseProductName());
+            final List<Object> params = new ArrayList<Object>();
+            final PreparedStatement ps = db.getConnection().prepareStatement(toSql(params, mysql));
+            final ShiftStats result = new ShiftStats();
+            try {
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
+                }
+                final ResultSet rs = ps.executeQuery();
+                try {
+                    while (rs.next()) {
+                        result.add(toStat(rs));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+            db.commit();
+            return result;
+        } catch (SQLException e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
+                    "SQL Exception while computing shift statistics", e);
+        } finally {
+            db.releaseConnection();
+            ShiftMetrics.getInstance().queried("shiftStats", start);
+        }
+    }
+
+    private ShiftStat toStat(final ResultSet rs) throws SQLException {
+        final ShiftStat stat = new ShiftStat();
+        int column = 1;
+        for (String group : groupBy) {
+            final String value = rs.getString(column++);
+            if (group.equals("type")) {
+                stat.setType(value);
+            } else if (group.equals("owner")) {
+                stat.setOwner(value);
+            } else if (group.equals("leadOperator")) {
+                stat.setLeadOperator(value);
+            } else if (group.equals("year")) {
+                stat.setYear(value);
+            } else if (group.equals("month")) {
+                stat.setMonth(value.substring(0, 4) + "-" + value.substring(4));
+            } else if (group.equals("week")) {
+                stat.setWeek(value.substring(0, 4) + "-W" + value.substring(4));
+            } else if (group.equals("day")) {
+                stat.setDay(value);
+            }
+        }
+        stat.setCount(rs.getLong(column++));
+        stat.setEnded(rs.getLong(column++));
+        stat.setTotalSeconds(rs.getLong(column));
+        stat.setAverageSeconds(stat.getEnded() == 0 ? 0 : (double) stat.getTotalSeconds() / stat.getEnded());
+        return stat;
+    }
+}
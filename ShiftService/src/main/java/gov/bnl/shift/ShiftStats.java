@@ -0,0 +1,32 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Response of a <tt>GET /shift/stats</tt> request: one {@link ShiftStat} per group, ordered by group.
+ *
+ */
+@XmlRootElement(name = "stats")
+public class ShiftStats extends LinkedList<ShiftStat> {
+
+    public ShiftStats() {
+    }
+
+    @XmlElementRef(type = ShiftStat.class, name = "stat")
+    public List<ShiftStat> getStatList() {
+        return this;
+    }
+
+    @XmlTransient
+    public List<ShiftStat> getStats() {
+        return this;
+    }
+
+    public void setStats(List<ShiftStat> stats) {
+        this.addAll(stats);
+    }
+}
@@ -0,0 +1,58 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * One item of a <tt>PUT /shift/batch</tt> request: a start, end or close of a shift.
+ *
+ */
+@XmlRootElement(name = "transition")
+@XmlType(propOrder = {"action", "shift"})
+public class ShiftTransition {
+
+    public static final String START = "start";
+    public static final String END = "end";
+    public static final String CLOSE = "close";
+
+    private String action = null;
+    private Shift shift = null;
+
+    public ShiftTransition() {
+    }
+
+    public ShiftTransition(final String action, final Shift shift) {
+        this.action = action;
+        this.shift = shift;
+    }
+
+    /**
+     * Getter for the action: start, end or close.
+     *
+     * @return action
+     */
+    @XmlAttribute
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(final String action) {
+        this.action = action;
+    }
+
+    /**
+     * Getter for the shift to start (with its type), end or close (with its id).
+     *
+     * @return shift
+     */
+    @XmlElement(name = "shift")
+    public Shift getShift() {
+        return shift;
+    }
+
+    public void setShift(final Shift shift) {
+        this.shift = shift;
+    }
+}
@@ -0,0 +1,89 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Outcome of one transition of a batch: the HTTP status the single request would have had,
+ * with the resulting shift on success and the reason otherwise.
+ *
+ */
+@XmlRootElement(name = "result")
+@XmlType(propOrder = {"index", "action", "status", "message", "shift"})
+public class ShiftTransitionResult {
+
+    private int index;
+    private String action = null;
+    private int status;
+    private String message = null;
+    private Shift shift = null;
+
+    public ShiftTransitionResult() {
+    }
+
+    public ShiftTransitionResult(final int index, final String action, final int status,
+                                 final String message, final Shift shift) {
+        this.index = index;
+        this.action = action;
+        this.status = status;
+        this.message = message;
+        this.shift = shift;
+    }
+
+    /**
+     * Getter for the position of the transition in the batch, from 0.
+     *
+     * @return index
+     */
+    @XmlAttribute
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(final int index) {
+        this.index = index;
+    }
+
+    @XmlAttribute
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(final String action) {
+        this.action = action;
+    }
+
+    /**
+     * Getter for the HTTP status of the transition.
+     *
+     * @return status code
+     */
+    @XmlAttribute
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    @XmlAttribute
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(final String message) {
+        this.message = message;
+    }
+
+    @XmlElement(name = "shift")
+    public Shift getShift() {
+        return shift;
+    }
+
+    public void setShift(final Shift shift) {
+        this.shift = shift;
+    }
+}
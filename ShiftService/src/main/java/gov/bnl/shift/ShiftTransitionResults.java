@@ -0,0 +1,68 @@
+package gov.bnl.shift;
+
+import javax.ws.rs.core.Response;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Response of a <tt>PUT /shift/batch</tt> request: one result per transition, in order.
+ * A batch is applied atomically, so either all transitions are committed or none.
+ *
+ */
+@XmlRootElement(name = "results")
+public class ShiftTransitionResults extends LinkedList<ShiftTransitionResult> {
+
+    /**
+     * Status of the transitions not applied because another one of the batch failed.
+     */
+    public static final int FAILED_DEPENDENCY = 424;
+
+    private boolean committed = false;
+
+    public ShiftTransitionResults() {
+    }
+
+    @XmlElementRef(type = ShiftTransitionResult.class, name = "result")
+    public List<ShiftTransitionResult> getResultList() {
+        return this;
+    }
+
+    @XmlTransient
+    public List<ShiftTransitionResult> getResults() {
+        return this;
+    }
+
+    public void setResults(List<ShiftTransitionResult> results) {
+        this.addAll(results);
+    }
+
+    /**
+     * Tells whether the batch was committed.
+     *
+     * @return true if all transitions were applied
+     */
+    @XmlAttribute
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public void setCommitted(final boolean committed) {
+        this.committed = committed;
+    }
+
+    /**
+     * Returns the HTTP status of the batch: 200 if it was committed, 409 if it was rolled back.
+     * The status of the failed transition is in its result; a request rejected as a whole
+     * gets an error response without results instead.
+     *
+     * @return status code
+     */
+    @XmlTransient
+    public int getStatus() {
+        return committed ? 200 : Response.Status.CONFLICT.getStatusCode();
+    }
+}
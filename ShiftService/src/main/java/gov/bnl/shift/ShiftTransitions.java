@@ -0,0 +1,36 @@
+package gov.bnl.shift;
+
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Body of a <tt>PUT /shift/batch</tt> request: the transitions to apply, in order.
+ *
+ */
+@XmlRootElement(name = "transitions")
+public class ShiftTransitions extends LinkedList<ShiftTransition> {
+
+    public ShiftTransitions() {
+    }
+
+    public ShiftTransitions(List<ShiftTransition> transitions) {
+        this.addAll(transitions);
+    }
+
+    @XmlElementRef(type = ShiftTransition.class, name = "transition")
+    public List<ShiftTransition> getTransitionList() {
+        return this;
+    }
+
+    @XmlTransient
+    public List<ShiftTransition> getTransitions() {
+        return this;
+    }
+
+    public void setTransitions(List<ShiftTransition> transitions) {
+        this.addAll(transitions);
+    }
+}
@@ -12,6 +12,8 @@ import java.util.List;
 @XmlRootElement(name = "shifts")
 public class Shifts extends LinkedList<Shift> {
 
+    private ShiftCursor next = null;
+
     public Shifts() {
     }
 
@@ -42,6 +44,20 @@ public class Shifts extends LinkedList<Shift> {
         this.add(shift);
     }
 
+    /**
+     * Returns the cursor of the page following this one, if any.
+     *
+     * @return next page cursor, or null on the last page
+     */
+    @XmlTransient
+    public ShiftCursor getNext() {
+        return next;
+    }
+
+    public void setNext(ShiftCursor next) {
+        this.next = next;
+    }
+
 
     /**
      * Creates a compact string representation for the shift.
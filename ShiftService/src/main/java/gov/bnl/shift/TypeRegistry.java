@@ -0,0 +1,156 @@
+package gov.bnl.shift;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * In-memory registry of the shift types, looked up by name or id.
+ * Types are loaded once from the database and reloaded on {@link #refresh()},
+ * or when a name that is not known is looked up (at most once every few seconds),
+ * so types added directly in the database are picked up.
+ * The returned Type instances are shared and must not be modified.
+ *
+ */
+public class TypeRegistry {
+
+    private static final Logger log = Logger.getLogger(TypeRegistry.class.getName());
+
+    private static final long missRefreshInterval = TimeUnit.SECONDS.toNanos(10);
+
+    private static TypeRegistry instance = new TypeRegistry();
+
+    private volatile Snapshot snapshot = null;
+
+    private TypeRegistry() {
+    }
+
+    /**
+     * Returns the (singleton) instance of TypeRegistry
+     *
+     * @return the instance of TypeRegistry
+     */
+    public static TypeRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reloads all types from the database.
+     *
+     * @throws ShiftFinderException wrapping a JPA exception
+     */
+    public synchronized void refresh() throws ShiftFinderException {
+        final long start = System.nanoTime();
+        final EntityManager em = JPAUtil.createEntityManager();
+        try {
+            final CriteriaBuilder cb = em.getCriteriaBuilder();
+            final CriteriaQuery<Type> cq = cb.createQuery(Type.class);
+            final Root<Type> from = cq.from(Type.class);
+            cq.select(from);
+            cq.orderBy(cb.asc(from.get(Type_.name)));
+            snapshot = new Snapshot(em.createQuery(cq).getResultList());
+            ShiftChanges.getInstance().changed();
+            log.fine("loaded " + snapshot.all.size() + " shift types");
+        } catch (Exception e) {
+            throw new ShiftFinderException(Response.Status.INTERNAL_SERVER_ERROR,
+                    "JPA exception: " + e);
+        } finally {
+            em.close();
+            ShiftMetrics.getInstance().queried("refreshTypes", start);
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    refresh();
+                }
+                s = snapshot;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns all types, ordered by name.
+     *
+     * @return unmodifiable list of types
+     */
+    public List<Type> list() {
+        return current().all;
+    }
+
+    /**
+     * Returns the type with the given name.
+     *
+     * @param name type name
+     * @return type, or null if there is no such type
+     */
+    public Type findByName(final String name) {
+        Snapshot s = current();
+        Type type = s.byName.get(name);
+        if (type == null && name != null && System.nanoTime() - s.loaded > missRefreshInterval) {
+            synchronized (this) {
+                if (snapshot == s) {
+                    refresh();
+                }
+                s = snapshot;
+            }
+            type = s.byName.get(name);
+        }
+        return type;
+    }
+
+    /**
+     * Returns the type with the given id.
+     *
+     * @param id type id
+     * @return type, or null if there is no such type
+     */
+    public Type findById(final int id) {
+        return current().byId.get(id);
+    }
+
+    /**
+     * Returns the ids of the types with the given names; unknown names are skipped.
+     *
+     * @param names type names
+     * @return type ids
+     */
+    public List<Integer> findIdsByName(final String... names) {
+        final List<Integer> result = new ArrayList<Integer>(names.length);
+        for (String name : names) {
+            final Type type = findByName(name);
+            if (type != null) {
+                result.add(type.getId());
+            }
+        }
+        return result;
+    }
+
+    private static class Snapshot {
+        private final List<Type> all;
+        private final Map<String, Type> byName = new HashMap<String, Type>();
+        private final Map<Integer, Type> byId = new HashMap<Integer, Type>();
+        private final long loaded = System.nanoTime();
+
+        private Snapshot(final List<Type> types) {
+            this.all = Collections.unmodifiableList(new ArrayList<Type>(types));
+            for (Type type : types) {
+                byName.put(type.getName(), type);
+                byId.put(type.getId(), type);
+            }
+        }
+    }
+}
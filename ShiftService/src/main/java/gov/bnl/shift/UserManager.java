@@ -2,13 +2,21 @@ package gov.bnl.shift;
 
 import java.security.Principal;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.naming.InitialContext;
 
 /**
  * Owner (group) membership management.
+ * Group memberships are cached per principal name in a bounded LRU cache whose entries
+ * expire after a configurable time, so that authorization does not query the
+ * user database on every request.
 */
 
 public abstract class UserManager {
@@ -23,7 +31,25 @@ public abstract class UserManager {
     private static final String userManager;
     private static UserManager instance;
 
+    private static final int defaultGroupCacheSize = 1000;
+    private static final long defaultGroupCacheExpiry = 300;
+    private static final long defaultGroupCacheNegativeExpiry = 60;
+    private static final int groupCacheSize;
+    private static final long groupCacheExpiry;
+    private static final long groupCacheNegativeExpiry;
+
+    private final int cacheSize;
+    private final long cacheExpiryNanos;
+    private final long negativeCacheExpiryNanos;
+    private final Map<String, CachedGroups> groupCache;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
     static {
+        groupCacheSize = (int) lookupNumber("shift/groupCacheSize", defaultGroupCacheSize);
+        groupCacheExpiry = lookupNumber("shift/groupCacheExpiry", defaultGroupCacheExpiry);
+        groupCacheNegativeExpiry = lookupNumber("shift/groupCacheNegativeExpiry", defaultGroupCacheNegativeExpiry);
+
         String newManager = defaultUserManager;
         try {
             newManager = (String) new InitialContext().lookup("shift/userManager");
@@ -45,6 +71,57 @@ public abstract class UserManager {
     }
 
     protected UserManager() {
+        this(groupCacheSize, TimeUnit.SECONDS.toMillis(groupCacheExpiry),
+                TimeUnit.SECONDS.toMillis(groupCacheNegativeExpiry));
+    }
+
+    /**
+     * Creates a UserManager with an explicit group cache configuration.
+     *
+     * @param cacheSize maximum number of principals kept in the group cache
+     * @param cacheExpiry time in ms after which cached group memberships are retrieved again
+     */
+    protected UserManager(final int cacheSize, final long cacheExpiry) {
+        this(cacheSize, cacheExpiry, cacheExpiry);
+    }
+
+    /**
+     * Creates a UserManager with an explicit group cache configuration.
+     * Users without any group membership (including unknown users) are cached
+     * with their own, usually shorter, expiry time.
+     *
+     * @param cacheSize maximum number of principals kept in the group cache
+     * @param cacheExpiry time in ms after which cached group memberships are retrieved again
+     * @param negativeCacheExpiry time in ms after which users without groups are looked up again
+     */
+    protected UserManager(final int cacheSize, final long cacheExpiry, final long negativeCacheExpiry) {
+        this.cacheSize = cacheSize;
+        this.cacheExpiryNanos = TimeUnit.MILLISECONDS.toNanos(cacheExpiry);
+        this.negativeCacheExpiryNanos = TimeUnit.MILLISECONDS.toNanos(negativeCacheExpiry);
+        this.groupCache = new LinkedHashMap<String, CachedGroups>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedGroups> eldest) {
+                return size() > UserManager.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Looks up a numeric JNDI resource.
+     *
+     * @param name JNDI name
+     * @param defaultValue value used if the resource is not defined
+     * @return the configured or default value
+     */
+    protected static long lookupNumber(final String name, final long defaultValue) {
+        try {
+            final Object value = new InitialContext().lookup(name);
+            log.log(Level.CONFIG, "Found {0}: {1}", new Object[]{name, value});
+            return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+        } catch (Exception ex) {
+            log.log(Level.CONFIG, "Using default {0}: {1}", new Object[]{name, defaultValue});
+            return defaultValue;
+        }
     }
 
     /**
@@ -76,7 +153,72 @@ public abstract class UserManager {
     public void setUser(Principal user, boolean isAdmin) {
         this.user.set(user);
         this.hasAdminRole.set(isAdmin);
-        this.groups.set(getGroups(user));
+        this.groups.set(getCachedGroups(user));
+    }
+
+    /**
+     * Returns the group membership for the given principal, using the cache when possible.
+     *
+     * @param user a user
+     * @return the group names
+     */
+    protected Set<String> getCachedGroups(Principal user) {
+        final String name = user.getName();
+        final long now = System.nanoTime();
+        synchronized (groupCache) {
+            final CachedGroups cached = groupCache.get(name);
+            if (cached != null && now - cached.expires < 0) {
+                cacheHits.incrementAndGet();
+                return cached.groups;
+            }
+        }
+        cacheMisses.incrementAndGet();
+        final Set<String> groups = Collections.unmodifiableSet(getGroups(user));
+        if (cacheSize > 0) {
+            synchronized (groupCache) {
+                groupCache.put(name, new CachedGroups(groups,
+                        now + (groups.isEmpty() ? negativeCacheExpiryNanos : cacheExpiryNanos)));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Drops the cached group membership of the named user.
+     *
+     * @param userName name of the user
+     */
+    public void invalidateGroups(String userName) {
+        synchronized (groupCache) {
+            groupCache.remove(userName);
+        }
+    }
+
+    /**
+     * Drops all cached group memberships.
+     */
+    public void invalidateGroups() {
+        synchronized (groupCache) {
+            groupCache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of group lookups answered from the cache.
+     *
+     * @return group cache hits
+     */
+    public long getGroupCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of group lookups that had to query the user database.
+     *
+     * @return group cache misses
+     */
+    public long getGroupCacheMisses() {
+        return cacheMisses.get();
     }
 
     /**
@@ -106,4 +248,14 @@ public abstract class UserManager {
     public String getUserName() {
         return user.get().getName();
     }
-}
\ No newline at end of file
+
+    private static class CachedGroups {
+        private final Set<String> groups;
+        private final long expires;
+
+        private CachedGroups(final Set<String> groups, final long expires) {
+            this.groups = groups;
+            this.expires = expires;
+        }
+    }
+}
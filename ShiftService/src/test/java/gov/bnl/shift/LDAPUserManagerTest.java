@@ -0,0 +1,210 @@
+package gov.bnl.shift;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchResult;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LDAPUserManagerTest {
+
+    private InMemoryDirectory directory;
+
+    @Before
+    public void setUp() {
+        directory = new InMemoryDirectory();
+        directory.addMember("shift-operators", "shift");
+        directory.addMember("shift-admins", "shift");
+        directory.addMember("shift-operators", "operator");
+    }
+
+    @Test
+    public void testGroupsAreSearchedOncePerUser() {
+        LDAPUserManager um = new LDAPUserManager(new LDAPContextPool(directory, 2, 1000), 10, 60000, 60000);
+        um.setUser(user("shift"), false);
+        assertTrue(um.userIsInGroup("shift-operators"));
+        assertTrue(um.userIsInGroup("shift-admins"));
+        um.setUser(user("shift"), false);
+        assertTrue(um.userIsInGroup("shift-admins"));
+        assertEquals(1, directory.searches.get());
+        assertEquals(1, um.getPool().getIdleCount());
+    }
+
+    @Test
+    public void testUnknownUsersAreCached() throws InterruptedException {
+        LDAPUserManager um = new LDAPUserManager(new LDAPContextPool(directory, 2, 1000), 10, 60000, 1);
+        um.setUser(user("nobody"), false);
+        assertFalse(um.userIsInGroup("shift-operators"));
+        um.setUser(user("shift"), false);
+        um.setUser(user("shift"), false);
+        assertEquals(2, directory.searches.get());
+        Thread.sleep(5);
+        um.setUser(user("nobody"), false);
+        um.setUser(user("shift"), false);
+        assertEquals(3, directory.searches.get());
+    }
+
+    @Test
+    public void testBrokenConnectionIsReplaced() {
+        directory.failNextSearch = true;
+        LDAPUserManager um = new LDAPUserManager(new LDAPContextPool(directory, 2, 1000), 10, 60000, 60000);
+        um.setUser(user("operator"), false);
+        assertTrue(um.userIsInGroup("shift-operators"));
+        assertEquals(2, um.getPool().getCreatedCount());
+        assertEquals(1, directory.closed.get());
+        assertEquals(1, um.getPool().getIdleCount());
+    }
+
+    @Test
+    public void testPoolIsBounded() throws InterruptedException {
+        final LDAPUserManager um = new LDAPUserManager(new LDAPContextPool(directory, 2, 5000), 0, 0, 0);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch done = new CountDownLatch(32);
+        for (int i = 0; i < 32; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        um.setUser(user("shift"), false);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(32, directory.searches.get());
+        assertTrue(um.getPool().getCreatedCount() <= 2);
+        assertTrue(directory.maxConcurrentSearches.get() <= 2);
+    }
+
+    private static Principal user(final String name) {
+        return new Principal() {
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * In-process stand-in for the LDAP server: answers "(memberUid=...)" subtree searches
+     * with the matching posixGroup entries, returning the group name in attribute "s".
+     */
+    private static class InMemoryDirectory implements LDAPContextPool.ContextFactory {
+        private final Map<String, List<String>> members = new HashMap<String, List<String>>();
+        private final AtomicInteger searches = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private final AtomicInteger concurrentSearches = new AtomicInteger();
+        private final AtomicInteger maxConcurrentSearches = new AtomicInteger();
+        private volatile boolean failNextSearch = false;
+
+        void addMember(String group, String user) {
+            if (!members.containsKey(group)) {
+                members.put(group, new ArrayList<String>());
+            }
+            members.get(group).add(user);
+        }
+
+        @Override
+        public DirContext create() {
+            return (DirContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DirContext.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("close")) {
+                                closed.incrementAndGet();
+                                return null;
+                            } else if (method.getName().equals("search") && args.length == 3 && args[1] instanceof String) {
+                                return search((String) args[1]);
+                            }
+                            throw new OperationNotSupportedException(method.getName());
+                        }
+                    });
+        }
+
+        private NamingEnumeration<SearchResult> search(String filter) throws NamingException {
+            if (failNextSearch) {
+                failNextSearch = false;
+                throw new CommunicationException("connection reset");
+            }
+            int concurrent = concurrentSearches.incrementAndGet();
+            try {
+                synchronized (maxConcurrentSearches) {
+                    maxConcurrentSearches.set(Math.max(concurrent, maxConcurrentSearches.get()));
+                }
+                searches.incrementAndGet();
+                Thread.sleep(1);
+                String uid = filter.substring(filter.indexOf('=') + 1, filter.length() - 1);
+                List<SearchResult> results = new ArrayList<SearchResult>();
+                for (Map.Entry<String, List<String>> group : members.entrySet()) {
+                    if (group.getValue().contains(uid)) {
+                        results.add(new SearchResult("cn=" + group.getKey(), null,
+                                new BasicAttributes("s", group.getKey())));
+                    }
+                }
+                return new ListEnumeration(results.iterator());
+            } catch (InterruptedException e) {
+                throw new NamingException("interrupted");
+            } finally {
+                concurrentSearches.decrementAndGet();
+            }
+        }
+    }
+
+    private static class ListEnumeration implements NamingEnumeration<SearchResult> {
+        private final Iterator<SearchResult> iterator;
+
+        ListEnumeration(Iterator<SearchResult> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public SearchResult next() {
+            return iterator.next();
+        }
+
+        @Override
+        public boolean hasMore() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return hasMore();
+        }
+
+        @Override
+        public SearchResult nextElement() {
+            return next();
+        }
+    }
+}
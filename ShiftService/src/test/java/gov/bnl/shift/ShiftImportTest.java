@@ -0,0 +1,40 @@
+package gov.bnl.shift;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ShiftImportTest {
+
+    @Test
+    public void testExportedLinesParse() throws IOException {
+        final Shift shift = ShiftImport.parseJson("{\"id\":7,\"type\":\"operation\",\"owner\":\"shift\","
+                + "\"startDate\":1000,\"endDate\":2000,\"report\":\"quiet\",\"extra\":{\"a\":[1]},\"status\":\"End\"}");
+        assertNull(shift.getId());
+        assertEquals("operation", shift.getType().getName());
+        assertEquals("shift", shift.getOwner());
+        assertEquals(new Date(1000), shift.getStartDate());
+        assertEquals(new Date(2000), shift.getEndDate());
+        assertEquals("quiet", shift.getReport());
+        assertNull(shift.getCloseShiftUser());
+        assertEquals("operation", ShiftImport.parseJson("{\"type\":{\"id\":1,\"name\":\"operation\"}}").getType().getName());
+    }
+
+    @Test
+    public void testMalformedLinesAreRejected() throws IOException {
+        for (String line : new String[]{"[1]", "{\"owner\":", "{\"startDate\":\"yesterday\"}"}) {
+            try {
+                ShiftImport.parseJson(line);
+                fail("accepted " + line);
+            } catch (JsonParseException e) {
+                // expected
+            }
+        }
+    }
+}
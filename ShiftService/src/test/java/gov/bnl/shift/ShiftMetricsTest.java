@@ -0,0 +1,44 @@
+package gov.bnl.shift;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShiftMetricsTest {
+
+    @Test
+    public void histogramBucketsAreCumulative() {
+        final ShiftMetrics.Histogram histogram = new ShiftMetrics.Histogram();
+        histogram.observe(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(30));
+        histogram.observe(TimeUnit.SECONDS.toNanos(20));
+        final StringBuilder out = new StringBuilder();
+        histogram.write(out, "t", "m=\"x\"");
+        final String text = out.toString();
+        assertTrue(text, text.contains("t_bucket{m=\"x\",le=\"0.001\"} 1\n"));
+        assertTrue(text, text.contains("t_bucket{m=\"x\",le=\"0.025\"} 1\n"));
+        assertTrue(text, text.contains("t_bucket{m=\"x\",le=\"0.05\"} 2\n"));
+        assertTrue(text, text.contains("t_bucket{m=\"x\",le=\"10.0\"} 2\n"));
+        assertTrue(text, text.contains("t_bucket{m=\"x\",le=\"+Inf\"} 3\n"));
+        assertTrue(text, text.contains("t_count{m=\"x\"} 3\n"));
+        assertEquals(3, histogram.getCount());
+    }
+
+    @Test
+    public void requestsInFlight() {
+        final ShiftMetrics metrics = ShiftMetrics.getInstance();
+        final long start = System.nanoTime();
+        metrics.requestStarted("ShiftMetricsTest.test");
+        assertEquals(Integer.valueOf(1), metrics.getRequestsInFlight().get("ShiftMetricsTest.test"));
+        metrics.requestFinished("ShiftMetricsTest.test", start);
+        assertEquals(Integer.valueOf(0), metrics.getRequestsInFlight().get("ShiftMetricsTest.test"));
+        assertEquals(Long.valueOf(1), metrics.getRequestCounts().get("ShiftMetricsTest.test"));
+        final String text = metrics.toPrometheus();
+        assertTrue(text, text.contains("# TYPE shift_http_request_duration_seconds histogram\n"));
+        assertTrue(text, text.contains("shift_http_requests_in_flight{endpoint=\"ShiftMetricsTest.test\"} 0\n"));
+        assertTrue(text, text.contains("shift_http_request_duration_seconds_count{endpoint=\"ShiftMetricsTest.test\"} 1\n"));
+    }
+}
@@ -0,0 +1,161 @@
+package gov.bnl.shift;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ShiftQueryTest {
+
+    @Test
+    public void testFiltersRenderAsSql() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        params.add("id", "3");
+        params.add("id", "4");
+        params.add("Owner", "shift");
+        params.add("from", "10");
+        params.add("status", "END");
+        ShiftQuery query = ShiftQuery.parse(params);
+        List<Object> values = new ArrayList<Object>();
+        String where = query.toSqlWhere(values);
+        assertEquals(" WHERE s.id IN (?, ?) AND s.owner IN (?) AND s.start_date BETWEEN ? AND ?"
+                + " AND s.end_date IS NOT NULL AND s.close_shift_user IS NULL", where);
+        assertEquals(Arrays.asList(3, 4, "shift"), values.subList(0, 3));
+        assertEquals(new Timestamp(10000), values.get(3));
+    }
+
+    @Test
+    public void testPagination() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        assertEquals(ShiftQuery.DEFAULT_LIMIT, ShiftQuery.parse(params).getLimit());
+        params.add("page", "3");
+        assertEquals(0, ShiftQuery.parse(params).getOffset());
+        params.add("limit", "20");
+        assertEquals(40, ShiftQuery.parse(params).getOffset());
+        params.add("after", "1000,7");
+        ShiftQuery query = ShiftQuery.parse(params);
+        assertEquals(0, query.getOffset());
+        List<Object> values = new ArrayList<Object>();
+        assertEquals(" WHERE (s.start_date < ? OR (s.start_date = ? AND s.id < ?))", query.toSqlWhere(values));
+        assertEquals(7, values.get(2));
+        assertEquals("SELECT s.id, t.name, s.owner, s.start_date, s.end_date, s.description, s.lead_operator,"
+                + " s.on_shift_personal, s.report, s.close_shift_user FROM shift s JOIN type t ON t.id = s.type_id"
+                + " WHERE (s.start_date < ? OR (s.start_date = ? AND s.id < ?))"
+                + " ORDER BY s.start_date DESC, s.id DESC LIMIT 20", ShiftExport.toSql(query, new ArrayList<Object>()));
+    }
+
+    @Test
+    public void testMalformedNumberIsRejected() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        params.add("limit", "ten");
+        try {
+            ShiftQuery.parse(params);
+            fail("expected BAD_REQUEST");
+        } catch (ShiftFinderException e) {
+            assertEquals(400, e.getResponseStatusCode());
+        }
+    }
+
+    @Test
+    public void testCsvQuoting() throws IOException {
+        StringWriter out = new StringWriter();
+        ShiftExport.writeCsvField(out, "plain");
+        ShiftExport.writeCsvField(out, null);
+        ShiftExport.writeCsvField(out, "a, \"b\"\nc");
+        assertEquals(",plain,,\"a, \"\"b\"\"\nc\"", out.toString());
+    }
+
+    @Test
+    public void testFields() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        assertEquals(null, ShiftQuery.parse(params).getFields());
+        params.add("fields", "owner, TYPE");
+        params.add("fields", "description");
+        assertEquals(Arrays.asList("id", "type", "owner", "startDate", "endDate", "description", "closeShiftUser"),
+                new ArrayList<String>(ShiftQuery.parse(params).getFields()));
+        params.add("fields", "report,secret");
+        try {
+            ShiftQuery.parse(params);
+            fail("unknown field accepted");
+        } catch (ShiftFinderException e) {
+            assertEquals(400, e.getResponseStatusCode());
+        }
+    }
+
+    @Test
+    public void testSearch() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        params.add("q", " Beam  Abort ");
+        params.add("limit", "10");
+        ShiftQuery query = ShiftQuery.parse(params);
+        assertEquals("Beam  Abort", query.getSearch());
+        List<Object> values = new ArrayList<Object>();
+        assertEquals(" WHERE MATCH (s.description, s.report) AGAINST (? IN NATURAL LANGUAGE MODE)"
+                + " ORDER BY MATCH (s.description, s.report) AGAINST (? IN NATURAL LANGUAGE MODE) DESC,"
+                + " s.start_date DESC, s.id DESC", query.toSqlWhere(values, true) + query.toSqlOrderBy(values, true));
+        assertEquals(Arrays.asList("Beam  Abort", "Beam  Abort"), values);
+        values.clear();
+        assertEquals(" WHERE (LOWER(s.description) LIKE ? OR LOWER(s.report) LIKE ?)"
+                + " AND (LOWER(s.description) LIKE ? OR LOWER(s.report) LIKE ?)", query.toSqlWhere(values, false));
+        assertEquals(Arrays.asList("%beam%", "%beam%", "%abort%", "%abort%"), values);
+        params.add("after", "1000,7");
+        try {
+            ShiftQuery.parse(params);
+            fail("search with a cursor accepted");
+        } catch (ShiftFinderException e) {
+            assertEquals(400, e.getResponseStatusCode());
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        params.add("groupBy", "Type, month");
+        params.add("owner", "shift");
+        ShiftStatistics statistics = ShiftStatistics.parse(params);
+        assertEquals(Arrays.asList("type", "month"), statistics.getGroupBy());
+        List<Object> values = new ArrayList<Object>();
+        assertEquals("SELECT t.name, YEAR(s.start_date) * 100 + MONTH(s.start_date), COUNT(*), COUNT(s.end_date),"
+                + " SUM(TIMESTAMPDIFF(SECOND, s.start_date, s.end_date)) FROM shift s JOIN type t ON t.id = s.type_id"
+                + " WHERE s.owner IN (?) GROUP BY t.name, YEAR(s.start_date) * 100 + MONTH(s.start_date)"
+                + " ORDER BY t.name, YEAR(s.start_date) * 100 + MONTH(s.start_date)", statistics.toSql(values, true));
+        assertEquals(Arrays.asList("shift"), values);
+        params.add("groupBy", "shift");
+        try {
+            ShiftStatistics.parse(params);
+            fail("unknown group accepted");
+        } catch (ShiftFinderException e) {
+            assertEquals(400, e.getResponseStatusCode());
+        }
+    }
+
+    @Test
+    public void testJpqlDependsOnlyOnBucketedShape() {
+        MultivaluedMap<String, String> params = new MultivaluedHashMap<String, String>();
+        params.add("id", "3");
+        params.add("id", "4");
+        params.add("id", "5");
+        params.add("status", "active");
+        Map<String, Object> values = new HashMap<String, Object>();
+        String jpql = ShiftQuery.parse(params).toJpql(values);
+        assertEquals("SELECT s FROM Shift s WHERE s.id IN (:id0, :id1, :id2, :id3) AND s.endDate IS NULL"
+                + " ORDER BY s.startDate DESC, s.id DESC", jpql);
+        assertEquals(5, values.get("id3"));
+        params.add("id", "6");
+        assertEquals(jpql, ShiftQuery.parse(params).toJpql(new HashMap<String, Object>()));
+        assertEquals(1, ShiftQuery.bucket(1));
+        assertEquals(8, ShiftQuery.bucket(5));
+        assertEquals(2048, ShiftQuery.bucket(1500));
+    }
+}
@@ -0,0 +1,83 @@
+package gov.bnl.shift;
+
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserManagerTest {
+
+    @Test
+    public void testGroupsAreCachedPerUser() {
+        CountingUserManager um = new CountingUserManager(10, 60000);
+        um.setUser(user("shift"), false);
+        um.setUser(user("shift"), false);
+        assertTrue(um.userIsInGroup("shift-group"));
+        assertFalse(um.userIsInGroup("other-group"));
+        assertEquals(1, um.lookups);
+        assertEquals(1, um.getGroupCacheHits());
+        assertEquals(1, um.getGroupCacheMisses());
+    }
+
+    @Test
+    public void testGroupsExpire() throws InterruptedException {
+        CountingUserManager um = new CountingUserManager(10, 1);
+        um.setUser(user("shift"), false);
+        Thread.sleep(5);
+        um.setUser(user("shift"), false);
+        assertEquals(2, um.lookups);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        CountingUserManager um = new CountingUserManager(2, 60000);
+        um.setUser(user("a"), false);
+        um.setUser(user("b"), false);
+        um.setUser(user("a"), false);
+        um.setUser(user("c"), false);
+        um.setUser(user("a"), false);
+        assertEquals(3, um.lookups);
+        um.setUser(user("b"), false);
+        assertEquals(4, um.lookups);
+    }
+
+    @Test
+    public void testInvalidateGroups() {
+        CountingUserManager um = new CountingUserManager(10, 60000);
+        um.setUser(user("shift"), false);
+        um.invalidateGroups("shift");
+        um.setUser(user("shift"), false);
+        assertEquals(2, um.lookups);
+        um.invalidateGroups();
+        um.setUser(user("shift"), false);
+        assertEquals(3, um.lookups);
+    }
+
+    private static Principal user(final String name) {
+        return new Principal() {
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    private static class CountingUserManager extends UserManager {
+        private int lookups = 0;
+
+        private CountingUserManager(int cacheSize, long cacheExpiry) {
+            super(cacheSize, cacheExpiry);
+        }
+
+        @Override
+        protected Set<String> getGroups(Principal user) {
+            lookups++;
+            return Collections.singleton(user.getName() + "-group");
+        }
+    }
+}